@@ -0,0 +1,112 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import org.copperengine.core.tranzient.TransientScottyEngine;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the asynchronous adapter with the virtual-thread adapter when a large number of workflows is in flight.
+ * The requests are served by the {@link RecruitingStubServer} with a fixed latency; the number of open connections is limited
+ * to {@code connections} in both modes. The score is the time needed to complete all workflows.
+ * After each iteration, the peak number of live platform threads and the peak heap usage are printed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class AdapterModeBenchmark {
+    @Param({"10000", "100000"})
+    public int workflows;
+
+    @Param({"ASYNC", "VIRTUAL_THREADS"})
+    public AppConfig.AdapterMode adapterMode;
+
+    @Param({"20"})
+    public int latencyMillis;
+
+    @Param({"512"})
+    public int connections;
+
+    private RecruitingStubServer stubServer;
+    private VirtualThreadTeamCreationAdapter virtualThreadAdapter;
+    private RecruitingClient client;
+    private ResponseDispatcher dispatcher;
+    private TransientScottyEngine engine;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        stubServer = new RecruitingStubServer(0, RecruitingStubServer.LatencyDistribution.FIXED, latencyMillis, 0, 0, 0);
+        stubServer.start();
+        var metrics = new WorkflowMetrics();
+        // a limit with equal bounds does not adapt
+        var scheduler = new ConcurrencyLimitingScheduler(
+                new AimdLimit(connections, connections, connections, 1.0, Long.MAX_VALUE), Integer.MAX_VALUE);
+        if(adapterMode == AppConfig.AdapterMode.VIRTUAL_THREADS) {
+            virtualThreadAdapter = new VirtualThreadTeamCreationAdapter(stubServer.getUrl(), scheduler, metrics,
+                    RecruitingClient.DEFAULT_REQUEST_TIMEOUT_MILLIS, new RequestDeadlines());
+            engine = BenchmarkEngines.createEngine(virtualThreadAdapter, virtualThreadAdapter::setEngine, workflows);
+        } else {
+            client = new RecruitingClient(stubServer.getUrl(), scheduler, metrics);
+            dispatcher = new ResponseDispatcher(65536, 256);
+            var adapter = new TeamCreationAdapterImpl(client, dispatcher, null, null);
+            engine = BenchmarkEngines.createEngine(adapter, adapter::setEngine, workflows);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        if(virtualThreadAdapter != null) {
+            virtualThreadAdapter.shutdown();
+        } else {
+            client.shutdown();
+            dispatcher.shutdown();
+        }
+        engine.shutdown();
+        stubServer.stop();
+    }
+
+    @Setup(Level.Iteration)
+    public void resetPeaks() {
+        ManagementFactory.getThreadMXBean().resetPeakThreadCount();
+        ManagementFactory.getMemoryPoolMXBeans().forEach(MemoryPoolMXBean::resetPeakUsage);
+    }
+
+    @TearDown(Level.Iteration)
+    public void printPeaks() {
+        long peakHeap = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .mapToLong(pool -> pool.getPeakUsage().getUsed())
+                .sum();
+        System.out.printf("%n%s, %d workflows: peak platform threads = %d, peak heap = %d MB%n", adapterMode, workflows,
+                ManagementFactory.getThreadMXBean().getPeakThreadCount(), peakHeap / (1024 * 1024));
+    }
+
+    @Benchmark
+    public void workflows() throws Exception {
+        for(int i = 0; i < workflows; i++) {
+            engine.run("TeamCreationWorkFlow", new TeamCreationRequest((i & 1) == 0, 2));
+        }
+        BenchmarkEngines.awaitCompletion(engine, 10, TimeUnit.MINUTES);
+    }
+}
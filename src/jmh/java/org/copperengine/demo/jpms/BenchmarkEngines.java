@@ -0,0 +1,138 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import ch.qos.logback.classic.Level;
+import org.copperengine.core.DependencyInjector;
+import org.copperengine.core.ProcessingEngine;
+import org.copperengine.core.Workflow;
+import org.copperengine.core.common.DefaultTicketPoolManager;
+import org.copperengine.core.common.TicketPool;
+import org.copperengine.core.common.TicketPoolManager;
+import org.copperengine.core.common.WorkflowRepository;
+import org.copperengine.core.persistent.PersistentProcessorPool;
+import org.copperengine.core.tranzient.TransientEngineFactory;
+import org.copperengine.core.tranzient.TransientProcessorPool;
+import org.copperengine.core.tranzient.TransientScottyEngine;
+import org.copperengine.core.wfrepo.ClasspathWorkflowRepository;
+import org.copperengine.core.util.PojoDependencyInjector;
+import org.aeonbits.owner.ConfigFactory;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Helper methods for the benchmarks that need a running engine.
+ */
+final class BenchmarkEngines {
+    private static final int DEFAULT_TICKET_COUNT = 20000;
+
+    private BenchmarkEngines() {
+    }
+
+    static TransientScottyEngine createEngine(InstantTeamCreationAdapter adapter) {
+        return createEngine(adapter, adapter::setEngine, DEFAULT_TICKET_COUNT);
+    }
+
+    /**
+     * @param engineSetter passes the engine to the adapter
+     * @param ticketCount the maximum number of workflow instances in the engine
+     */
+    static TransientScottyEngine createEngine(TeamCreationAdapter adapter, Consumer<ProcessingEngine> engineSetter, int ticketCount) {
+        return createEngine(adapter, engineSetter, ticketCount, new TeamCreationEvents());
+    }
+
+    /**
+     * @param listener receives the completion of each workflow
+     */
+    static TransientScottyEngine createEngine(TeamCreationAdapter adapter, Consumer<ProcessingEngine> engineSetter, int ticketCount,
+                                              TeamCreationListener listener) {
+        var injector = createInjector(adapter, engineSetter, listener, TransientProcessorPool.DEFAULT_POOL_ID);
+        var factory = new TransientEngineFactory() {
+            @Override
+            protected File getWorkflowSourceDirectory() {
+                // abstract in the factory, but only used by the createWorkflowRepository overridden below
+                return null;
+            }
+
+            @Override
+            protected WorkflowRepository createWorkflowRepository() {
+                return new ClasspathWorkflowRepository("org.copperengine.demo.jpms.workflow");
+            }
+
+            @Override
+            protected DependencyInjector createDependencyInjector() {
+                return injector;
+            }
+
+            @Override
+            protected TicketPoolManager createTicketPoolManager() {
+                var tpManager = new DefaultTicketPoolManager();
+                tpManager.setTicketPools(Collections.singletonList(new TicketPool(DefaultTicketPoolManager.DEFAULT_POOL_ID, ticketCount)));
+                return tpManager;
+            }
+        };
+        return factory.create();
+    }
+
+    /**
+     * Creates a persistent engine, whose database files start with {@code databasePath}.
+     * @param listener receives the completion of each workflow
+     */
+    static DurableEngine createDurableEngine(TeamCreationAdapter adapter, Consumer<ProcessingEngine> engineSetter,
+                                             TeamCreationListener listener, String databasePath) throws Exception {
+        var injector = createInjector(adapter, engineSetter, listener, PersistentProcessorPool.DEFAULT_POOL_ID);
+        var config = ConfigFactory.create(AppConfig.class, Map.of("persistentDatabasePath", databasePath));
+        return DurableEngine.create(config, 0, injector, new ClasspathWorkflowRepository("org.copperengine.demo.jpms.workflow"),
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    private static DependencyInjector createInjector(TeamCreationAdapter adapter, Consumer<ProcessingEngine> engineSetter,
+                                                     TeamCreationListener listener, String memberProcessorPoolId) {
+        // the teams created by the benchmarks should not be logged
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger("org.copperengine.demo")).setLevel(Level.WARN);
+
+        var injector = new PojoDependencyInjector() {
+            @Override
+            public void inject(Workflow<?> workflow) {
+                super.inject(workflow);
+                engineSetter.accept(workflow.getEngine());
+            }
+        };
+        injector.register("adapter", adapter);
+        injector.register("listener", listener);
+        injector.register("metrics", new WorkflowMetrics());
+        injector.register("resultSink", TeamResultSink.DISCARD);
+        injector.register("memberProcessorPoolId", memberProcessorPoolId);
+        return injector;
+    }
+
+    static void awaitCompletion(TransientScottyEngine engine, long timeout, TimeUnit unit) throws TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while(engine.getNumberOfWorkflowInstances() > 0) {
+            if(System.nanoTime() > deadline) {
+                throw new TimeoutException(engine.getNumberOfWorkflowInstances() + " workflows still running.");
+            }
+            LockSupport.parkNanos(10_000);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the generation of correlation IDs, which happens once for each recruiting request.
+ * The multi-threaded variant shows the contention on the shared counter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CorrelationIdBenchmark {
+    @Benchmark
+    public String singleThreaded() {
+        return EngineRouter.createCorrelationId(0);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String fourThreads() {
+        return EngineRouter.createCorrelationId(0);
+    }
+}
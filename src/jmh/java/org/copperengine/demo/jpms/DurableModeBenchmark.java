@@ -0,0 +1,106 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import org.copperengine.core.ProcessingEngine;
+import org.copperengine.core.WorkflowInstanceDescr;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * Compares the workflow throughput of the transient engine with that of the persistent engine ({@link DurableEngine}),
+ * which writes each workflow, its waits and its responses to an embedded H2 database.
+ * The workflows of a batch are started with one {@code runBatch}, as the {@link WorkflowSubmitter} does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class DurableModeBenchmark {
+    private static final int BATCH_SIZE = 1000;
+
+    @Param({"TRANSIENT", "PERSISTENT"})
+    public AppConfig.EngineMode engineMode;
+
+    private final AtomicInteger running = new AtomicInteger();
+    private InstantTeamCreationAdapter adapter;
+    private ProcessingEngine engine;
+    private DurableEngine durableEngine;
+    private Path databaseDirectory;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        adapter = new InstantTeamCreationAdapter(InstantTeamCreationAdapter.Delivery.DISPATCHER);
+        TeamCreationListener listener = (workflowId, teamCreated) -> running.decrementAndGet();
+        if(engineMode == AppConfig.EngineMode.PERSISTENT) {
+            databaseDirectory = Files.createTempDirectory("team-creation-benchmark");
+            durableEngine = BenchmarkEngines.createDurableEngine(adapter, adapter::setEngine, listener,
+                    databaseDirectory.resolve("db").toString());
+            engine = durableEngine.getEngine();
+        } else {
+            engine = BenchmarkEngines.createEngine(adapter, adapter::setEngine, 2 * BATCH_SIZE, listener);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        adapter.shutdown();
+        if(durableEngine != null) {
+            durableEngine.close();
+            try(Stream<Path> files = Files.walk(databaseDirectory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        } else {
+            engine.shutdown();
+        }
+    }
+
+    /**
+     * Starts a batch of workflows and waits until all of them are completed. The score is in workflows per second.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void workflows() throws Exception {
+        var batch = new ArrayList<WorkflowInstanceDescr<?>>(BATCH_SIZE);
+        for(int i = 0; i < BATCH_SIZE; i++) {
+            batch.add(new WorkflowInstanceDescr<>("TeamCreationWorkFlow", new TeamCreationRequest((i & 1) == 0, 4)));
+        }
+        running.addAndGet(BATCH_SIZE);
+        engine.runBatch(batch);
+        awaitCompletion(60, TimeUnit.SECONDS);
+    }
+
+    private void awaitCompletion(long timeout, TimeUnit unit) throws TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while(running.get() > 0) {
+            if(System.nanoTime() > deadline) {
+                throw new TimeoutException(running.get() + " workflows still running.");
+            }
+            LockSupport.parkNanos(10_000);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import org.copperengine.core.Acknowledge;
+import org.copperengine.core.ProcessingEngine;
+import org.copperengine.core.Response;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link TeamCreationAdapter} that completes each request instantly, so that the benchmarks measure only the engine.
+ */
+public class InstantTeamCreationAdapter implements TeamCreationAdapter {
+    private static final Person FEMALE_LEADER = new Person("Ioana", "Popescu", "Romania", true);
+    private static final Person MALE_LEADER = new Person("Adrian", "Popescu", "Romania", false);
+
+    public enum Delivery {
+        /** engine.notify followed by a blocking waitForAcknowledge, as the adapter did originally */
+        BLOCKING_ACK,
+        /** hand-over to a {@link ResponseDispatcher} */
+        DISPATCHER
+    }
+
+    private final AtomicLong counter = new AtomicLong();
+    private final Delivery delivery;
+    private final ResponseDispatcher dispatcher;
+    private volatile ProcessingEngine engine;
+
+    public InstantTeamCreationAdapter(Delivery delivery) {
+        this.delivery = delivery;
+        this.dispatcher = (delivery == Delivery.DISPATCHER) ? new ResponseDispatcher(65536, 256) : null;
+    }
+
+    public void setEngine(ProcessingEngine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Delivers the queued responses; must be called before the engine is shut down.
+     */
+    public void shutdown() throws InterruptedException {
+        if(dispatcher != null) {
+            dispatcher.shutdown();
+        }
+    }
+
+    @Override
+    public String asyncCreateLeader(boolean female, long timeoutMillis) {
+        return complete(female ? FEMALE_LEADER : MALE_LEADER);
+    }
+
+    @Override
+    public String asyncCreateTeamMember(Person leader, long timeoutMillis) {
+        long requestNumber = counter.incrementAndGet();
+        complete(requestNumber, new Person("Member", "No" + requestNumber, leader.getLocation(), false));
+        return correlationId(requestNumber);
+    }
+
+    @Override
+    public long asyncCreateTeamMembers(Person leader, int count, long timeoutMillis) {
+        long first = counter.getAndAdd(count) + 1;
+        for(int i = 0; i < count; i++) {
+            complete(first + i, new Person("Member", "No" + (first + i), leader.getLocation(), false));
+        }
+        return first;
+    }
+
+    @Override
+    public String correlationId(long requestNumber) {
+        return "BENCHMARK-" + requestNumber;
+    }
+
+    @Override
+    public void cancel(String correlationId) {
+        // all requests are completed instantly
+    }
+
+    private String complete(Person person) {
+        long requestNumber = counter.incrementAndGet();
+        complete(requestNumber, person);
+        return correlationId(requestNumber);
+    }
+
+    private void complete(long requestNumber, Person person) {
+        String correlationId = correlationId(requestNumber);
+        var response = new Response<>(correlationId, person, null);
+        if(delivery == Delivery.DISPATCHER) {
+            dispatcher.dispatch(engine, response);
+        } else {
+            var ack = new Acknowledge.DefaultAcknowledge();
+            engine.notify(response, ack);
+            ack.waitForAcknowledge();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the tree-based decoding previously used by the adapter with the streaming {@link PersonDecoder}.
+ * Run with the gc profiler (configured in build.gradle) to see the allocation per response ({@code gc.alloc.rate.norm}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersonDecodingBenchmark {
+    private static final String RESPONSE_BODY =
+            "{\"name\":\"Ioana\",\"surname\":\"Popescu\",\"gender\":\"female\",\"region\":\"Romania\"}";
+
+    private byte[] responseBytes;
+
+    @Setup
+    public void setup() {
+        responseBytes = RESPONSE_BODY.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public Person treeModel() throws Exception {
+        var node = new ObjectMapper().readTree(new String(responseBytes, StandardCharsets.UTF_8));
+        String firstName = node.get("name").asText();
+        String lastName = node.get("surname").asText();
+        String gender = node.get("gender").asText();
+        String location = node.get("region").asText();
+        return new Person(firstName, lastName, location, "female".equals(gender));
+    }
+
+    @Benchmark
+    public Person streaming() throws Exception {
+        return PersonDecoder.decode(new ByteArrayInputStream(responseBytes));
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import org.copperengine.core.WorkflowInstanceDescr;
+import org.copperengine.core.tranzient.TransientScottyEngine;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the completion time of a team when the workflow waits for all members ({@code memberQuorum = teamSize})
+ * with the quorum mode, in which the team is created as soon as {@code memberQuorum} members are recruited.
+ * The requests are served by the {@link RecruitingStubServer} with exponentially distributed latencies
+ * and a few dropped connections, which only end with the request timeout, so the slowest member dominates the tail latency.
+ * Compare the p0.99 of the sampled times; the number of cancelled member requests is printed after each iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 20)
+@Threads(16)
+@Fork(1)
+public class QuorumBenchmark {
+    @Param({"4"})
+    public int teamSize;
+
+    @Param({"4", "3"})
+    public int memberQuorum;
+
+    @Param({"20"})
+    public int latencyMillis;
+
+    @Param({"0.005"})
+    public double dropRate;
+
+    @Param({"1000"})
+    public int requestTimeoutMillis;
+
+    private final AtomicLong workflowCounter = new AtomicLong();
+    private final Map<String, CompletableFuture<Boolean>> completions = new ConcurrentHashMap<>();
+    private RecruitingStubServer stubServer;
+    private RequestDeadlines deadlines;
+    private TokenBucketScheduler scheduler;
+    private RecruitingClient client;
+    private ResponseDispatcher dispatcher;
+    private TransientScottyEngine engine;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        stubServer = new RecruitingStubServer(0, RecruitingStubServer.LatencyDistribution.EXPONENTIAL, latencyMillis, 0, dropRate, 0);
+        stubServer.start();
+        deadlines = new RequestDeadlines();
+        scheduler = new TokenBucketScheduler(0, 1, Integer.MAX_VALUE, 1);
+        client = new RecruitingClient(stubServer.getUrl(), scheduler,
+                new WorkflowMetrics(), requestTimeoutMillis, null, null, null, deadlines);
+        dispatcher = new ResponseDispatcher(65536, 256);
+        var adapter = new TeamCreationAdapterImpl(client, dispatcher, null, null);
+        engine = BenchmarkEngines.createEngine(adapter, adapter::setEngine, 1000, (workflowId, teamCreated) -> {
+            var completion = completions.remove(workflowId);
+            if(completion != null) {
+                completion.complete(teamCreated);
+            }
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        scheduler.shutdown();
+        client.shutdown();
+        dispatcher.shutdown();
+        engine.shutdown();
+        stubServer.stop();
+    }
+
+    @TearDown(Level.Iteration)
+    public void printCancellations() {
+        System.out.printf("%nquorum %d of %d: %d member requests cancelled so far%n", memberQuorum, teamSize, deadlines.getCancelledCount());
+    }
+
+    /**
+     * Runs one workflow and waits for its completion.
+     */
+    @Benchmark
+    public boolean team() throws Exception {
+        String workflowId = "quorum-" + workflowCounter.incrementAndGet();
+        var completion = new CompletableFuture<Boolean>();
+        completions.put(workflowId, completion);
+        var request = new TeamCreationRequest((workflowId.hashCode() & 1) == 0, teamSize, memberQuorum, 0);
+        engine.run(new WorkflowInstanceDescr<>("TeamCreationWorkFlow", request, workflowId, null, null));
+        return completion.get(2, TimeUnit.MINUTES);
+    }
+}
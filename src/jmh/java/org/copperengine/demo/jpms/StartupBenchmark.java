@@ -0,0 +1,103 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cold-start cost of the runtime image: the time from launching the process
+ * until the application reports its first completed workflow (served by the embedded stub server).
+ * Requires the image created by {@code ./gradlew jlinkCds}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(1)
+public class StartupBenchmark {
+    private static final String MARKER = "First workflow completed";
+
+    public enum Sharing {
+        /** the application archive created by the training run */
+        APP_CDS,
+        /** only the JDK classes archived by jlink */
+        DEFAULT_CDS,
+        OFF
+    }
+
+    @Param({"APP_CDS", "DEFAULT_CDS", "OFF"})
+    public Sharing sharing;
+
+    private Path imageDir;
+    private Path config;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        imageDir = Path.of(System.getProperty("team.creation.image", "build/copper-modular-demo-image"));
+        if(!Files.isRegularFile(imageDir.resolve("lib/app-cds.jsa"))) {
+            throw new IllegalStateException("No CDS archive found in " + imageDir + ". Run ./gradlew jlinkCds first.");
+        }
+        config = Files.createTempFile("startup-benchmark", ".properties");
+        Files.writeString(config, String.join(System.lineSeparator(),
+                "workflowCount = 10", "delayMillis = 0", "iterationCount = 1", "stubServerEnabled = true", "stubLatencyMillis = 1"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(config);
+    }
+
+    @Benchmark
+    public void timeToFirstWorkflowCompleted() throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(imageDir.resolve("bin/java").toString());
+        if(sharing == Sharing.APP_CDS) {
+            command.add("-XX:SharedArchiveFile=" + imageDir.resolve("lib/app-cds.jsa"));
+        } else if(sharing == Sharing.OFF) {
+            command.add("-Xshare:off");
+        }
+        command.add("-Dio.netty.tryReflectionSetAccessible=false");
+        command.add("-Dlogback.configurationFile=./logback.xml");
+        command.add("-Dteam.creation.config=" + config);
+        command.add("--module");
+        command.add("org.copperengine.demo.jpms/org.copperengine.demo.jpms.TeamCreationMain");
+
+        Process process = new ProcessBuilder(command)
+                .directory(imageDir.resolve("bin").toFile())
+                .redirectErrorStream(true)
+                .start();
+        try(var reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while((line = reader.readLine()) != null) {
+                if(line.contains(MARKER)) {
+                    return;
+                }
+            }
+        } finally {
+            process.destroyForcibly().waitFor();
+        }
+        throw new IllegalStateException("The application terminated without completing a workflow.");
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import org.copperengine.core.tranzient.TransientScottyEngine;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how many {@code TeamCreationWorkflow}s per second a {@link TransientScottyEngine} completes
+ * when the adapter answers instantly, i.e. the cost of the engine and of the {@code engine.notify} round-trips.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class WorkflowThroughputBenchmark {
+    private static final int BATCH_SIZE = 1000;
+
+    @Param({"1", "4"})
+    public int teamSize;
+
+    @Param({"BLOCKING_ACK", "DISPATCHER"})
+    public InstantTeamCreationAdapter.Delivery delivery;
+
+    private InstantTeamCreationAdapter adapter;
+    private TransientScottyEngine engine;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        adapter = new InstantTeamCreationAdapter(delivery);
+        engine = BenchmarkEngines.createEngine(adapter);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        adapter.shutdown();
+        engine.shutdown();
+    }
+
+    /**
+     * Starts a batch of workflows and waits until all of them are completed. The score is in workflows per second.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void workflows() throws Exception {
+        for(int i = 0; i < BATCH_SIZE; i++) {
+            engine.run("TeamCreationWorkFlow", new TeamCreationRequest((i & 1) == 0, teamSize));
+        }
+        BenchmarkEngines.awaitCompletion(engine, 60, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Runs a single workflow (1 + teamSize notify round-trips) and reports the distribution of its completion time.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void notifyRoundTrips() throws Exception {
+        engine.run("TeamCreationWorkFlow", new TeamCreationRequest(true, teamSize));
+        BenchmarkEngines.awaitCompletion(engine, 60, TimeUnit.SECONDS);
+    }
+}
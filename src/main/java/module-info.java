@@ -23,6 +23,10 @@ module org.copperengine.demo.jpms {
     requires com.fasterxml.jackson.databind;
     requires owner;
     requires java.management;
+    requires java.sql;
+    requires com.h2database;
+    requires java.net.http;
+    requires jdk.httpserver;
 
     exports org.copperengine.demo.jpms;
 }
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+import java.util.function.IntSupplier;
+
+/**
+ * Exposes the counters of the recruiting adapter and lets an operator retune its pacing, its concurrency bounds
+ * and its request timeout via JMX, without restarting the engine.
+ * The counters are the striped counters of {@link WorkflowMetrics}; they are only summed when an attribute is read.
+ */
+public class AdapterControl implements AdapterControlMXBean {
+    private static final Logger logger = LoggerFactory.getLogger(AdapterControl.class);
+    private static final long MIN_RATE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final RateLimitingScheduler scheduler;
+    private final WorkflowMetrics metrics;
+    private final ResponseDispatcher dispatcher;
+    private final RequestCoalescer coalescer;
+    private final IntSupplier requestTimeoutGetter;
+    private final IntConsumer requestTimeoutSetter;
+
+    private long rateSampledAt = System.nanoTime();
+    private long rateSampledCount;
+    private double requestRate;
+
+    /**
+     * @param dispatcher the response dispatcher or null, if the responses are delivered directly to the engine
+     * @param coalescer the request coalescer or null, if coalescing is not enabled
+     */
+    public AdapterControl(RateLimitingScheduler scheduler, WorkflowMetrics metrics, ResponseDispatcher dispatcher,
+                          RequestCoalescer coalescer, IntSupplier requestTimeoutGetter, IntConsumer requestTimeoutSetter) {
+        this.scheduler = scheduler;
+        this.metrics = metrics;
+        this.dispatcher = dispatcher;
+        this.coalescer = coalescer;
+        this.requestTimeoutGetter = requestTimeoutGetter;
+        this.requestTimeoutSetter = requestTimeoutSetter;
+    }
+
+    @Override
+    public int getPendingCount() {
+        return scheduler.getPendingCount();
+    }
+
+    @Override
+    public long getInFlightCount() {
+        return metrics.getInFlightCount();
+    }
+
+    @Override
+    public long getRequestCount() {
+        return metrics.getRequestCount();
+    }
+
+    @Override
+    public synchronized double getRequestRate() {
+        long now = System.nanoTime();
+        long elapsed = now - rateSampledAt;
+        if(elapsed >= MIN_RATE_INTERVAL_NANOS) {
+            long count = metrics.getRequestCount();
+            requestRate = (count - rateSampledCount) * 1e9 / elapsed;
+            rateSampledCount = count;
+            rateSampledAt = now;
+        }
+        return requestRate;
+    }
+
+    @Override
+    public long getErrorCount() {
+        return metrics.getErrorCount();
+    }
+
+    @Override
+    public long getTimeoutCount() {
+        return metrics.getTimeoutCount();
+    }
+
+    @Override
+    public LatencySnapshot getDecodeTime() {
+        return metrics.getDecodeTime();
+    }
+
+    @Override
+    public int getResponseQueueSize() {
+        return (dispatcher == null) ? -1 : dispatcher.getQueueSize();
+    }
+
+    @Override
+    public long getCoalescedRequestCount() {
+        return (coalescer == null) ? 0 : coalescer.getRequestCount();
+    }
+
+    @Override
+    public long getCoalescedBatchCount() {
+        return (coalescer == null) ? 0 : coalescer.getBatchCount();
+    }
+
+    @Override
+    public long getDelayMillis() {
+        return (scheduler instanceof TokenBucketScheduler) ? ((TokenBucketScheduler)scheduler).getDelayMillis() : -1;
+    }
+
+    @Override
+    public void setDelayMillis(long delayMillis) {
+        var tokenBucket = tokenBucket();
+        tokenBucket.setPacing(delayMillis, tokenBucket.getBurstSize());
+        logger.info("Recruiting requests paced at {} ms.", delayMillis);
+    }
+
+    @Override
+    public int getBurstSize() {
+        return (scheduler instanceof TokenBucketScheduler) ? ((TokenBucketScheduler)scheduler).getBurstSize() : -1;
+    }
+
+    @Override
+    public void setBurstSize(int burstSize) {
+        var tokenBucket = tokenBucket();
+        tokenBucket.setPacing(tokenBucket.getDelayMillis(), burstSize);
+        logger.info("Recruiting burst size set to {}.", burstSize);
+    }
+
+    @Override
+    public int getConcurrencyLimit() {
+        return (scheduler instanceof ConcurrencyLimitingScheduler) ? ((ConcurrencyLimitingScheduler)scheduler).getLimit() : -1;
+    }
+
+    @Override
+    public int getMinConcurrency() {
+        return (scheduler instanceof ConcurrencyLimitingScheduler) ? ((ConcurrencyLimitingScheduler)scheduler).getMinLimit() : -1;
+    }
+
+    @Override
+    public void setMinConcurrency(int minConcurrency) {
+        var limiter = concurrencyLimiter();
+        limiter.setBounds(minConcurrency, limiter.getMaxLimit());
+        logger.info("Minimum concurrency set to {}.", minConcurrency);
+    }
+
+    @Override
+    public int getMaxConcurrency() {
+        return (scheduler instanceof ConcurrencyLimitingScheduler) ? ((ConcurrencyLimitingScheduler)scheduler).getMaxLimit() : -1;
+    }
+
+    @Override
+    public void setMaxConcurrency(int maxConcurrency) {
+        var limiter = concurrencyLimiter();
+        limiter.setBounds(limiter.getMinLimit(), maxConcurrency);
+        logger.info("Maximum concurrency set to {}.", maxConcurrency);
+    }
+
+    @Override
+    public int getRequestTimeoutMillis() {
+        return requestTimeoutGetter.getAsInt();
+    }
+
+    @Override
+    public void setRequestTimeoutMillis(int requestTimeoutMillis) {
+        if(requestTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("requestTimeoutMillis must be positive: " + requestTimeoutMillis);
+        }
+        requestTimeoutSetter.accept(requestTimeoutMillis);
+        logger.info("Recruiting request timeout set to {} ms.", requestTimeoutMillis);
+    }
+
+    private TokenBucketScheduler tokenBucket() {
+        if(!(scheduler instanceof TokenBucketScheduler)) {
+            throw new IllegalStateException("The pacing can only be changed with throttlingMode = FIXED_DELAY.");
+        }
+        return (TokenBucketScheduler)scheduler;
+    }
+
+    private ConcurrencyLimitingScheduler concurrencyLimiter() {
+        if(!(scheduler instanceof ConcurrencyLimitingScheduler)) {
+            throw new IllegalStateException("The concurrency bounds can only be changed with an adaptive throttlingMode.");
+        }
+        return (ConcurrencyLimitingScheduler)scheduler;
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+/**
+ * The live state of the recruiting adapter and the settings that can be changed while the application runs.
+ * Setting a pacing attribute fails if the adapter does not use the token bucket,
+ * setting a concurrency bound fails if it does not use an adaptive limit.
+ */
+public interface AdapterControlMXBean {
+    /** requests waiting in the scheduler */
+    int getPendingCount();
+    /** requests sent and not yet finished */
+    long getInFlightCount();
+    long getRequestCount();
+    /** requests sent per second since the previous read (at least one second earlier) */
+    double getRequestRate();
+    long getErrorCount();
+    long getTimeoutCount();
+    LatencySnapshot getDecodeTime();
+    /** responses waiting for {@code engine.notify}; -1 without a response dispatcher */
+    int getResponseQueueSize();
+    long getCoalescedRequestCount();
+    long getCoalescedBatchCount();
+
+    long getDelayMillis();
+    void setDelayMillis(long delayMillis);
+    int getBurstSize();
+    void setBurstSize(int burstSize);
+
+    int getConcurrencyLimit();
+    int getMinConcurrency();
+    void setMinConcurrency(int minConcurrency);
+    int getMaxConcurrency();
+    void setMaxConcurrency(int maxConcurrency);
+
+    int getRequestTimeoutMillis();
+    void setRequestTimeoutMillis(int requestTimeoutMillis);
+}
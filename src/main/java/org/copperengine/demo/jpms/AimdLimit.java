@@ -0,0 +1,76 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+/**
+ * Additive increase, multiplicative decrease: the limit grows by one after each successful request
+ * that was sent while the limit was actually used, and is multiplied by {@code backoffRatio} after each failure
+ * and after each response slower than the latency threshold.
+ */
+public class AimdLimit implements ConcurrencyLimit {
+    private volatile int minLimit;
+    private volatile int maxLimit;
+    private final double backoffRatio;
+    private final long latencyThresholdNanos;
+    private volatile int limit;
+
+    /**
+     * @param latencyThresholdNanos requests taking longer than this are treated as a sign of overload;
+     * it should be well below the request timeout, so that the limit shrinks before requests fail
+     */
+    public AimdLimit(int initialLimit, int minLimit, int maxLimit, double backoffRatio, long latencyThresholdNanos) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.latencyThresholdNanos = latencyThresholdNanos;
+        this.limit = initialLimit;
+    }
+
+    @Override
+    public int getLimit() {
+        return limit;
+    }
+
+    @Override
+    public synchronized void onSample(long rttNanos, int inFlight, boolean dropped) {
+        int currentLimit = limit;
+        if(dropped || rttNanos > latencyThresholdNanos) {
+            limit = Math.max(minLimit, (int) (currentLimit * backoffRatio));
+        } else if(inFlight * 2 >= currentLimit) {
+            limit = Math.min(maxLimit, currentLimit + 1);
+        }
+    }
+
+    @Override
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    @Override
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    @Override
+    public synchronized void setBounds(int minLimit, int maxLimit) {
+        if(minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Invalid bounds: [" + minLimit + ", " + maxLimit + "]");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        limit = Math.max(minLimit, Math.min(maxLimit, limit));
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import org.aeonbits.owner.Config;
+import org.aeonbits.owner.Config.Sources;
+
+@Sources({"file:${team.creation.config}"})
+public interface AppConfig extends Config {
+    enum ThrottlingMode {FIXED_DELAY, AIMD, GRADIENT}
+    enum AdapterMode {ASYNC, VIRTUAL_THREADS}
+    enum ResultOutput {LOG, NDJSON_FILE, NONE}
+    enum EngineMode {TRANSIENT, PERSISTENT}
+
+    @DefaultValue("200")
+    int workflowCount();
+
+    @DefaultValue("1000")
+    int maxWorkflowsInFlight();
+
+    @DefaultValue("100000")
+    int maxPendingSubmissions();
+
+    /**
+     * The time after which the ticket of a workflow that has not reported its completion is released,
+     * e.g. because the workflow failed or was removed from the engine.
+     */
+    @DefaultValue("300")
+    long workflowTicketTimeoutSeconds();
+
+    /**
+     * The number of threads of the default processor pool, which runs the leader phase of the workflows; 0 means one per CPU.
+     */
+    @DefaultValue("0")
+    int processorPoolThreads();
+
+    /**
+     * The number of threads of a separate processor pool for the member phase of the workflows; 0 means no separate pool.
+     */
+    @DefaultValue("0")
+    int memberProcessorPoolThreads();
+
+    /**
+     * The number of independent engines; the workflows are assigned to them by the hash of their ID.
+     * Each engine has its own processor pools (with {@code processorPoolThreads = 0}, the CPUs are divided among the engines).
+     */
+    @DefaultValue("1")
+    int shardCount();
+
+    /**
+     * TRANSIENT keeps the workflows in memory only; PERSISTENT stores them in an embedded H2 database,
+     * so that the workflows in flight survive a restart.
+     */
+    @DefaultValue("TRANSIENT")
+    EngineMode engineMode();
+
+    /**
+     * The path of the database files of the persistent engine; each shard uses its own database ({@code <path>-<shard>}).
+     */
+    @DefaultValue("./data/team-creation")
+    String persistentDatabasePath();
+
+    /**
+     * The number of threads that write the batched workflow and response changes to the database, per shard.
+     */
+    @DefaultValue("2")
+    int persistentBatcherThreads();
+
+    @DefaultValue("16")
+    int persistentMaxConnections();
+
+    @DefaultValue("http://uinames.com/api/")
+    String recruitingServiceUrl();
+
+    /**
+     * If not empty, the workflows are compiled at startup from the sources in this directory instead of being loaded from the module.
+     */
+    @DefaultValue("")
+    String workflowSourceDirectory();
+
+    @DefaultValue("50")
+    long delayMillis();
+
+    @DefaultValue("1")
+    int burstSize();
+
+    @DefaultValue("100000")
+    int maxPendingRequests();
+
+    @DefaultValue("ASYNC")
+    AdapterMode adapterMode();
+
+    @DefaultValue("1")
+    long schedulerTickMillis();
+
+    @DefaultValue("FIXED_DELAY")
+    ThrottlingMode throttlingMode();
+
+    @DefaultValue("10")
+    int initialConcurrency();
+
+    @DefaultValue("1")
+    int minConcurrency();
+
+    @DefaultValue("200")
+    int maxConcurrency();
+
+    @DefaultValue("0.9")
+    double aimdBackoffRatio();
+
+    /**
+     * AIMD treats a response slower than this as a sign of overload and shrinks the limit.
+     */
+    @DefaultValue("1000")
+    long aimdLatencyThresholdMillis();
+
+    @DefaultValue("60000")
+    int requestTimeoutMillis();
+
+    @DefaultValue("false")
+    boolean hedgingEnabled();
+
+    @DefaultValue("95")
+    double hedgingPercentile();
+
+    @DefaultValue("10")
+    long hedgingMinDelayMillis();
+
+    @DefaultValue("10000")
+    long hedgingWindowMillis();
+
+    @DefaultValue("10")
+    int hedgingBudgetPercent();
+
+    @DefaultValue("false")
+    boolean circuitBreakerEnabled();
+
+    @DefaultValue("50")
+    int circuitBreakerWindowSize();
+
+    @DefaultValue("20")
+    int circuitBreakerMinCalls();
+
+    @DefaultValue("50")
+    double circuitBreakerFailureRate();
+
+    @DefaultValue("5000")
+    long circuitBreakerOpenMillis();
+
+    @DefaultValue("65536")
+    int responseQueueCapacity();
+
+    @DefaultValue("256")
+    int responseBatchSize();
+
+    /**
+     * The number of members after which a team is created without waiting for the others; 0 means all members.
+     */
+    @DefaultValue("0")
+    int memberQuorum();
+
+    /**
+     * The maximum time a workflow waits for its members before creating the team with the members recruited so far;
+     * 0 means the default timeout of the workflow.
+     */
+    @DefaultValue("0")
+    long memberQuorumTimeoutMillis();
+
+    /**
+     * Where the created teams go: the log, an NDJSON file ({@link #resultFile()}) or nowhere.
+     * They are written by a {@link BatchingResultSink} off the processor threads.
+     */
+    @DefaultValue("LOG")
+    ResultOutput resultOutput();
+
+    @DefaultValue("teams.ndjson")
+    String resultFile();
+
+    /**
+     * The number of results that may wait for the writer thread; further results are dropped.
+     */
+    @DefaultValue("65536")
+    int resultQueueCapacity();
+
+    @DefaultValue("1024")
+    int resultBatchSize();
+
+    @DefaultValue("200")
+    long resultFlushIntervalMillis();
+
+    /**
+     * If true, each flush of the NDJSON file also forces the data to the storage device.
+     */
+    @DefaultValue("false")
+    boolean resultSyncOnFlush();
+
+    /**
+     * If true, the adapter serves the requests from a pool of persons prefetched in bulk.
+     */
+    @DefaultValue("false")
+    boolean personPoolEnabled();
+
+    @DefaultValue("20")
+    int personPoolLowWatermark();
+
+    @DefaultValue("100")
+    int personPoolHighWatermark();
+
+    @DefaultValue("64")
+    int personPoolMaxKeys();
+
+    @DefaultValue("600000")
+    long personPoolTtlMillis();
+
+    /**
+     * If true, concurrent requests for the same region/gender are combined into bulk requests.
+     */
+    @DefaultValue("false")
+    boolean coalescingEnabled();
+
+    @DefaultValue("5")
+    long coalescingWindowMillis();
+
+    @DefaultValue("50")
+    int coalescingMaxBatchSize();
+
+    /**
+     * If true, the recruiting requests are served by an embedded {@link RecruitingStubServer} instead of {@link #recruitingServiceUrl()}.
+     */
+    @DefaultValue("false")
+    boolean stubServerEnabled();
+
+    @DefaultValue("0")
+    int stubServerPort();
+
+    @DefaultValue("UNIFORM")
+    RecruitingStubServer.LatencyDistribution stubLatencyDistribution();
+
+    @DefaultValue("20")
+    long stubLatencyMillis();
+
+    @DefaultValue("0")
+    double stubErrorRate();
+
+    @DefaultValue("0")
+    double stubDropRate();
+
+    @DefaultValue("0")
+    int stubMaxConcurrency();
+
+    /**
+     * If true, the workflows are started by a {@link LoadDriver} instead of in batches of {@link #workflowCount()}.
+     * In this case, {@link #workflowCount()} is the maximum number of workflows in flight.
+     */
+    @DefaultValue("false")
+    boolean loadDriverEnabled();
+
+    @DefaultValue("CLOSED_LOOP")
+    LoadDriver.ArrivalModel loadArrivalModel();
+
+    /**
+     * The number of workflows in flight for the CLOSED_LOOP model.
+     */
+    @DefaultValue("100")
+    int loadConcurrency();
+
+    /**
+     * The number of workflows started per second for the CONSTANT_RATE and POISSON models.
+     */
+    @DefaultValue("100")
+    double loadTargetRate();
+
+    @DefaultValue("10")
+    long loadWarmupSeconds();
+
+    @DefaultValue("30")
+    long loadMeasurementSeconds();
+
+    /**
+     * The time to wait for the workflows still in flight at the end of the measurement.
+     */
+    @DefaultValue("120")
+    long loadDrainTimeoutSeconds();
+
+    @DefaultValue("1")
+    int iterationCount();
+
+    @DefaultValue("5000")
+    long iterationDelayMillis();
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A {@link TeamResultSink} that hands the results over to a dedicated writer thread, so that the processor threads never wait for the output.
+ * The results are collected in a bounded queue; if the queue is full, the result is dropped and counted.
+ * The writer thread drains the queue in batches and flushes the {@link ResultWriter}
+ * after {@code batchSize} results or {@code flushIntervalMillis} after the first unflushed result, whichever comes first.
+ */
+public class BatchingResultSink implements TeamResultSink, ResultSinkMXBean, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(BatchingResultSink.class);
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long RATE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final ResultWriter writer;
+    private final MpscArrayQueue<Result> queue;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final Thread writerThread;
+    private volatile boolean sleeping;
+    private volatile boolean running = true;
+
+    private final LongAdder publishedCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+    private final LongAdder writtenCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private final LongAdder flushCount = new LongAdder();
+    private volatile double writeRate;
+    private volatile long lastFlushMicros;
+
+    private static class Result {
+        private final String workflowId;
+        private final Team team;
+
+        private Result(String workflowId, Team team) {
+            this.workflowId = workflowId;
+            this.team = team;
+        }
+    }
+
+    public BatchingResultSink(ResultWriter writer, int capacity, int batchSize, long flushIntervalMillis) {
+        this.writer = writer;
+        this.queue = new MpscArrayQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.writerThread = new Thread(this::work, "team-creation-result-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * @return the sink configured by the {@code result*} properties, or null if {@code resultOutput = NONE}
+     */
+    public static BatchingResultSink create(AppConfig config) throws IOException {
+        ResultWriter writer;
+        switch(config.resultOutput()) {
+            case NDJSON_FILE:
+                writer = new NdjsonFileResultWriter(Path.of(config.resultFile()), config.resultSyncOnFlush());
+                break;
+            case LOG:
+                writer = new LoggingResultWriter();
+                break;
+            default:
+                return null;
+        }
+        return new BatchingResultSink(writer, config.resultQueueCapacity(), config.resultBatchSize(), config.resultFlushIntervalMillis());
+    }
+
+    @Override
+    public void publish(String workflowId, Team team) {
+        publishedCount.increment();
+        if(queue.offer(new Result(workflowId, team))) {
+            if(sleeping) {
+                LockSupport.unpark(writerThread);
+            }
+        } else {
+            droppedCount.increment();
+            logger.debug("Result queue full. Dropping the team of workflow {}.", workflowId);
+        }
+    }
+
+    /**
+     * Writes and flushes the queued results and closes the writer.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(writerThread);
+        writerThread.join();
+    }
+
+    private void work() {
+        int unflushed = 0;
+        long firstUnflushedAt = 0;
+        long rateIntervalStart = System.nanoTime();
+        long rateIntervalCount = 0;
+        while(running || queue.size() > 0) {
+            int count = queue.drain(this::write, batchSize);
+            long now = System.nanoTime();
+            if(count > 0 && unflushed == 0) {
+                firstUnflushedAt = now;
+            }
+            unflushed += count;
+            if(unflushed > 0 && (unflushed >= batchSize || now - firstUnflushedAt >= flushIntervalNanos)) {
+                flush();
+                unflushed = 0;
+            }
+            if(now - rateIntervalStart >= RATE_INTERVAL_NANOS) {
+                long written = writtenCount.sum();
+                writeRate = (written - rateIntervalCount) * 1e9 / (now - rateIntervalStart);
+                rateIntervalStart = now;
+                rateIntervalCount = written;
+            }
+            if(count == 0) {
+                sleeping = true;
+                if(queue.size() == 0 && running) {
+                    // wake up in time for the pending flush
+                    long parkNanos = (unflushed > 0) ? firstUnflushedAt + flushIntervalNanos - now : IDLE_PARK_NANOS;
+                    LockSupport.parkNanos(this, Math.max(1, parkNanos));
+                }
+                sleeping = false;
+            }
+        }
+        if(unflushed > 0) {
+            flush();
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close the result writer: {}", e.toString());
+        }
+    }
+
+    private void write(Result result) {
+        try {
+            writer.write(result.workflowId, result.team);
+            writtenCount.increment();
+        } catch (IOException | RuntimeException e) {
+            failedCount.increment();
+            logger.warn("Failed to write the team of workflow {}: {}", result.workflowId, e.toString());
+        }
+    }
+
+    private void flush() {
+        long start = System.nanoTime();
+        try {
+            writer.flush();
+            flushCount.increment();
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to flush the results: {}", e.toString());
+        }
+        lastFlushMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+    }
+
+    @Override
+    public long getPublishedCount() {
+        return publishedCount.sum();
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    @Override
+    public long getWrittenCount() {
+        return writtenCount.sum();
+    }
+
+    @Override
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+
+    @Override
+    public long getFlushCount() {
+        return flushCount.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return writer.getBytesWritten();
+    }
+
+    @Override
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return queue.capacity();
+    }
+
+    @Override
+    public double getWriteRate() {
+        return writeRate;
+    }
+
+    @Override
+    public long getLastFlushMicros() {
+        return lastFlushMicros;
+    }
+}
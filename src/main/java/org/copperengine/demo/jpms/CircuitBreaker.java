@@ -0,0 +1,166 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stops sending requests to an endpoint whose failure rate in a sliding window of the most recent requests exceeds a threshold.
+ * After {@code openMillis}, a single probe request is let through: if it succeeds, the breaker closes again.
+ */
+public class CircuitBreaker implements CircuitBreakerMXBean {
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public enum State {CLOSED, OPEN, HALF_OPEN}
+
+    private final String endpoint;
+    private final int minCalls;
+    private final double failureRateThreshold;
+    private final long openNanos;
+
+    private final boolean[] outcomes;
+    private int outcomeCount;
+    private int failureCount;
+    private int nextOutcome;
+    private volatile State state = State.CLOSED;
+    private long openedAt;
+    private boolean probeInFlight;
+
+    private final LongAdder openCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+
+    /**
+     * @param windowSize the number of recent requests used to compute the failure rate
+     * @param minCalls the minimum number of requests in the window before the breaker can open
+     * @param failureRateThreshold the failure rate (0-100) at which the breaker opens
+     * @param openMillis the time the breaker stays open before a probe request is allowed
+     */
+    public CircuitBreaker(String endpoint, int windowSize, int minCalls, double failureRateThreshold, long openMillis) {
+        this.endpoint = endpoint;
+        this.outcomes = new boolean[windowSize];
+        this.minCalls = Math.min(minCalls, windowSize);
+        this.failureRateThreshold = failureRateThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+    }
+
+    /**
+     * @return true if a request may be sent. Each permitted request must be followed by a call to {@link #onResult(boolean)}.
+     */
+    public boolean tryAcquire() {
+        if(state == State.CLOSED) {
+            return true;
+        }
+        synchronized(this) {
+            if(state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+                state = State.HALF_OPEN;
+                probeInFlight = false;
+            }
+            if(state == State.HALF_OPEN && !probeInFlight) {
+                probeInFlight = true;
+                return true;
+            }
+            if(state == State.CLOSED) {
+                return true;
+            }
+        }
+        rejectedCount.increment();
+        return false;
+    }
+
+    /**
+     * Returns a permit obtained by {@link #tryAcquire()} for a request that has not been sent.
+     */
+    public synchronized void release() {
+        if(state == State.HALF_OPEN) {
+            probeInFlight = false;
+        }
+    }
+
+    public synchronized void onResult(boolean success) {
+        if(state == State.HALF_OPEN) {
+            probeInFlight = false;
+            if(success) {
+                logger.info("Closing the circuit breaker of {}.", endpoint);
+                clearWindow();
+                state = State.CLOSED;
+            } else {
+                open();
+            }
+            return;
+        }
+        if(state == State.OPEN) {
+            return;
+        }
+        if(outcomeCount == outcomes.length) {
+            if(!outcomes[nextOutcome]) {
+                failureCount--;
+            }
+        } else {
+            outcomeCount++;
+        }
+        outcomes[nextOutcome] = success;
+        if(!success) {
+            failureCount++;
+        }
+        nextOutcome = (nextOutcome + 1) % outcomes.length;
+        if(outcomeCount >= minCalls && failureCount * 100.0 / outcomeCount >= failureRateThreshold) {
+            logger.warn("Opening the circuit breaker of {}: {} of the last {} requests failed.", endpoint, failureCount, outcomeCount);
+            open();
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+        openCount.increment();
+        clearWindow();
+    }
+
+    private void clearWindow() {
+        outcomeCount = 0;
+        failureCount = 0;
+        nextOutcome = 0;
+    }
+
+    @Override
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    @Override
+    public State getState() {
+        return state;
+    }
+
+    @Override
+    public synchronized double getFailureRate() {
+        return (outcomeCount == 0) ? 0 : failureCount * 100.0 / outcomeCount;
+    }
+
+    @Override
+    public long getOpenCount() {
+        return openCount.sum();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+}
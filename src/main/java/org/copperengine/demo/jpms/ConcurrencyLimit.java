@@ -0,0 +1,39 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+/**
+ * An algorithm that adjusts the number of concurrent requests based on the observed latency and failures.
+ */
+public interface ConcurrencyLimit {
+    int getLimit();
+
+    /**
+     * @param rttNanos the duration of the request
+     * @param inFlight the number of requests in flight when the request completed
+     * @param dropped true if the request failed with a non-2xx response, an I/O error or a timeout
+     */
+    void onSample(long rttNanos, int inFlight, boolean dropped);
+
+    int getMinLimit();
+
+    int getMaxLimit();
+
+    /**
+     * Changes the bounds of the limit at runtime; the current limit is moved into the new range.
+     */
+    void setBounds(int minLimit, int maxLimit);
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Starts the scheduled actions as soon as the number of requests in flight is below the limit computed by a {@link ConcurrencyLimit}.
+ * The actions run on the thread that schedules an action or that reports a completed request, so they must not block.
+ * Only one thread drains the queue at a time: a thread that finds the queue being drained leaves its actions to the draining thread,
+ * and an action that fails synchronously (and thus reports its completion from within the drain loop) does not recurse into it.
+ */
+public class ConcurrencyLimitingScheduler implements RateLimitingScheduler, ConcurrencyLimitMXBean {
+    private static final Logger logger = LoggerFactory.getLogger(ConcurrencyLimitingScheduler.class);
+    private static final int HISTORY_SIZE = 100;
+
+    private final ConcurrencyLimit limit;
+    private final int maxPending;
+    private final Queue<Runnable> pendingActions = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // the number of drain requests since the draining thread last checked; non-zero while a thread is draining
+    private final AtomicInteger drainRequests = new AtomicInteger();
+
+    private final LimitChange[] history = new LimitChange[HISTORY_SIZE];
+    private int historyCount;
+    private volatile int lastLimit;
+
+    public static class LimitChange {
+        private final long timestamp;
+        private final int limit;
+
+        private LimitChange(long timestamp, int limit) {
+            this.timestamp = timestamp;
+            this.limit = limit;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public int getLimit() {
+            return limit;
+        }
+    }
+
+    public ConcurrencyLimitingScheduler(ConcurrencyLimit limit, int maxPending) {
+        this.limit = limit;
+        this.maxPending = maxPending;
+        this.lastLimit = limit.getLimit();
+        recordLimit(lastLimit);
+    }
+
+    @Override
+    public boolean schedule(Runnable action) {
+        if(pendingCount.incrementAndGet() > maxPending) {
+            pendingCount.decrementAndGet();
+            logger.debug("Rejecting action: {} actions already pending.", maxPending);
+            return false;
+        }
+        pendingActions.add(action);
+        drain();
+        return true;
+    }
+
+    @Override
+    public void onRequestCompleted(long rttNanos, boolean dropped) {
+        limit.onSample(rttNanos, inFlight.get(), dropped);
+        int newLimit = limit.getLimit();
+        if(newLimit != lastLimit) {
+            lastLimit = newLimit;
+            recordLimit(newLimit);
+        }
+        inFlight.decrementAndGet();
+        drain();
+    }
+
+    @Override
+    public void onRequestSkipped() {
+        inFlight.decrementAndGet();
+        drain();
+    }
+
+    private void drain() {
+        if(drainRequests.getAndIncrement() != 0) {
+            // another thread (or an outer call on this thread) is draining and will check the queue again
+            return;
+        }
+        int missed = 1;
+        do {
+            startPendingActions();
+            missed = drainRequests.addAndGet(-missed);
+        } while(missed != 0);
+    }
+
+    private void startPendingActions() {
+        while(!pendingActions.isEmpty()) {
+            int current = inFlight.get();
+            if(current >= limit.getLimit()) {
+                return;
+            }
+            if(!inFlight.compareAndSet(current, current + 1)) {
+                continue;
+            }
+            Runnable action = pendingActions.poll();
+            if(action == null) {
+                inFlight.decrementAndGet();
+                return;
+            }
+            pendingCount.decrementAndGet();
+            try {
+                action.run();
+            } catch (RuntimeException e) {
+                logger.warn("Scheduled action failed.", e);
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    private synchronized void recordLimit(int newLimit) {
+        history[historyCount % HISTORY_SIZE] = new LimitChange(System.currentTimeMillis(), newLimit);
+        historyCount++;
+    }
+
+    @Override
+    public int getLimit() {
+        return limit.getLimit();
+    }
+
+    public int getMinLimit() {
+        return limit.getMinLimit();
+    }
+
+    public int getMaxLimit() {
+        return limit.getMaxLimit();
+    }
+
+    /**
+     * Changes the bounds of the limit; a larger limit takes effect immediately.
+     */
+    public void setBounds(int minLimit, int maxLimit) {
+        limit.setBounds(minLimit, maxLimit);
+        int newLimit = limit.getLimit();
+        if(newLimit != lastLimit) {
+            lastLimit = newLimit;
+            recordLimit(newLimit);
+        }
+        drain();
+    }
+
+    @Override
+    public int getInFlightCount() {
+        return inFlight.get();
+    }
+
+    @Override
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    @Override
+    public synchronized List<LimitChange> getLimitHistory() {
+        int count = Math.min(historyCount, HISTORY_SIZE);
+        var changes = new ArrayList<LimitChange>(count);
+        for(int i = historyCount - count; i < historyCount; i++) {
+            changes.add(history[i % HISTORY_SIZE]);
+        }
+        return changes;
+    }
+
+    @Override
+    public void shutdown() {
+    }
+}
@@ -15,17 +15,214 @@
  */
 package org.copperengine.demo.jpms;
 
+import org.copperengine.core.DependencyInjector;
 import org.copperengine.core.Workflow;
+import org.copperengine.core.persistent.PersistentProcessorPool;
+import org.copperengine.core.tranzient.TransientProcessorPool;
 import org.copperengine.core.util.PojoDependencyInjector;
 
-public class DefaultDependencyInjector extends PojoDependencyInjector {
-    public DefaultDependencyInjector(long delayMillis) {
-        this.register("adapter", new TeamCreationAdapterImpl(delayMillis));
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates the components used by the workflows and injects them.
+ * {@link #shutdownAdapter()} must be called before the engines are shut down, {@link #close()} afterwards.
+ */
+public class DefaultDependencyInjector extends PojoDependencyInjector implements AutoCloseable {
+    private final TimingWheel wheel;
+    private final RateLimitingScheduler scheduler;
+    private final RecruitingClient client;
+    private final ResponseDispatcher dispatcher;
+    private final VirtualThreadTeamCreationAdapter virtualThreadAdapter;
+    private final HedgingPolicy hedgingPolicy;
+    private final CircuitBreaker circuitBreaker;
+    private final PersonPool personPool;
+    private final BatchingResultSink resultSink;
+    private final RequestDeadlines deadlines = new RequestDeadlines();
+    private final ShardedTeamCreationAdapter adapter;
+    private final AdapterControl adapterControl;
+    private final TeamCreationEvents events = new TeamCreationEvents();
+    private final WorkflowMetrics metrics = new WorkflowMetrics();
+    private boolean adapterShutDown;
+
+    public static final String MEMBER_PROCESSOR_POOL_ID = "team-creation-members";
+
+    public DefaultDependencyInjector(AppConfig config, String recruitingServiceUrl) throws IOException {
+        wheel = new TimingWheel("team-creation-timer", config.schedulerTickMillis(), TimeUnit.MILLISECONDS, 512);
+        scheduler = createScheduler(config, wheel);
+        if(config.adapterMode() == AppConfig.AdapterMode.VIRTUAL_THREADS) {
+            // pool, coalescing, hedging and circuit breaker are features of the asynchronous RecruitingClient
+            hedgingPolicy = null;
+            circuitBreaker = null;
+            personPool = null;
+            client = null;
+            dispatcher = null;
+            virtualThreadAdapter = new VirtualThreadTeamCreationAdapter(recruitingServiceUrl, scheduler, metrics,
+                    config.requestTimeoutMillis(), deadlines);
+            adapter = virtualThreadAdapter;
+            adapterControl = new AdapterControl(scheduler, metrics, null, null,
+                    virtualThreadAdapter::getRequestTimeoutMillis, virtualThreadAdapter::setRequestTimeoutMillis);
+        } else {
+            if(config.hedgingEnabled()) {
+                hedgingPolicy = new HedgingPolicy(config.hedgingPercentile(), config.hedgingMinDelayMillis(),
+                        config.hedgingWindowMillis(), config.hedgingBudgetPercent());
+            } else {
+                hedgingPolicy = null;
+            }
+            if(config.circuitBreakerEnabled()) {
+                circuitBreaker = new CircuitBreaker(URI.create(recruitingServiceUrl).getAuthority(), config.circuitBreakerWindowSize(),
+                        config.circuitBreakerMinCalls(), config.circuitBreakerFailureRate(), config.circuitBreakerOpenMillis());
+            } else {
+                circuitBreaker = null;
+            }
+            virtualThreadAdapter = null;
+            client = new RecruitingClient(recruitingServiceUrl, scheduler, metrics, config.requestTimeoutMillis(),
+                    wheel, hedgingPolicy, circuitBreaker, deadlines);
+            dispatcher = new ResponseDispatcher(config.responseQueueCapacity(), config.responseBatchSize());
+            if(config.personPoolEnabled()) {
+                personPool = new PersonPool(client, config.personPoolLowWatermark(), config.personPoolHighWatermark(),
+                        config.personPoolMaxKeys(), config.personPoolTtlMillis());
+            } else {
+                personPool = null;
+            }
+            RequestCoalescer coalescer = null;
+            if(config.coalescingEnabled()) {
+                coalescer = new RequestCoalescer(client, wheel, config.coalescingWindowMillis(), config.coalescingMaxBatchSize());
+            }
+            adapter = new TeamCreationAdapterImpl(client, dispatcher, personPool, coalescer);
+            adapterControl = new AdapterControl(scheduler, metrics, dispatcher, coalescer,
+                    client::getRequestTimeoutMillis, client::setRequestTimeoutMillis);
+        }
+        resultSink = BatchingResultSink.create(config);
+        this.register("adapter", adapter);
+        this.register("listener", events);
+        this.register("resultSink", (resultSink != null) ? resultSink : TeamResultSink.DISCARD);
+        this.register("metrics", metrics);
+        String defaultPoolId = (config.engineMode() == AppConfig.EngineMode.PERSISTENT)
+                ? PersistentProcessorPool.DEFAULT_POOL_ID : TransientProcessorPool.DEFAULT_POOL_ID;
+        this.register("memberProcessorPoolId",
+                (config.memberProcessorPoolThreads() > 0) ? MEMBER_PROCESSOR_POOL_ID : defaultPoolId);
+    }
+
+    private static RateLimitingScheduler createScheduler(AppConfig config, TimingWheel wheel) {
+        switch(config.throttlingMode()) {
+            case AIMD:
+                return new ConcurrencyLimitingScheduler(new AimdLimit(config.initialConcurrency(), config.minConcurrency(),
+                        config.maxConcurrency(), config.aimdBackoffRatio(),
+                        TimeUnit.MILLISECONDS.toNanos(config.aimdLatencyThresholdMillis())), config.maxPendingRequests());
+            case GRADIENT:
+                return new ConcurrencyLimitingScheduler(new GradientLimit(config.initialConcurrency(), config.minConcurrency(),
+                        config.maxConcurrency()), config.maxPendingRequests());
+            default:
+                return new TokenBucketScheduler(config.delayMillis(), config.burstSize(), config.maxPendingRequests(), wheel);
+        }
+    }
+
+    public RateLimitingScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public WorkflowMetrics getMetrics() {
+        return metrics;
+    }
+
+    public TeamCreationEvents getEvents() {
+        return events;
+    }
+
+    public RequestDeadlines getDeadlines() {
+        return deadlines;
+    }
+
+    public AdapterControl getAdapterControl() {
+        return adapterControl;
+    }
+
+    /**
+     * @return the hedging policy of the recruiting client or null, if hedging is not enabled
+     */
+    public HedgingPolicy getHedgingPolicy() {
+        return hedgingPolicy;
+    }
+
+    /**
+     * @return the circuit breaker of the recruiting service or null, if the circuit breaker is not enabled
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * @return the sink of the created teams or null, if {@code resultOutput = NONE}
+     */
+    public BatchingResultSink getResultSink() {
+        return resultSink;
+    }
+
+    /**
+     * @return the pool of prefetched persons or null, if the pool is not enabled
+     */
+    public PersonPool getPersonPool() {
+        return personPool;
+    }
+
+    /**
+     * @return an injector for the workflows of the given engine shard; all shards share the recruiting client,
+     * the scheduler and the metrics, but each one gets its own view of the adapter
+     */
+    public DependencyInjector forShard(int shard) {
+        var shardInjector = new PojoDependencyInjector() {
+            @Override
+            public void inject(Workflow<?> workflow) {
+                super.inject(workflow);
+                adapter.setEngine(shard, workflow.getEngine());
+            }
+        };
+        shardInjector.register("adapter", adapter.forShard(shard));
+        for(String name : List.of("listener", "metrics", "resultSink", "memberProcessorPoolId")) {
+            shardInjector.register(name, getBean(name));
+        }
+        return shardInjector;
     }
 
     @Override
     public void inject(Workflow<?> workflow) {
         super.inject(workflow);
-        ((TeamCreationAdapterImpl)getBean("adapter")).setEngine(workflow.getEngine());
+        adapter.setEngine(workflow.getEngine());
+    }
+
+    /**
+     * Stops accepting requests, closes the HTTP client and delivers the responses already received to the engines,
+     * which must still be running.
+     */
+    public synchronized void shutdownAdapter() throws InterruptedException {
+        if(adapterShutDown) {
+            return;
+        }
+        adapterShutDown = true;
+        scheduler.shutdown();
+        if(virtualThreadAdapter != null) {
+            virtualThreadAdapter.shutdown();
+        }
+        if(client != null) {
+            client.shutdown();
+        }
+        if(dispatcher != null) {
+            dispatcher.shutdown();
+        }
+    }
+
+    /**
+     * Shuts down the adapter if this has not been done yet, stops the timer and finally writes the remaining results.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        shutdownAdapter();
+        wheel.shutdown();
+        if(resultSink != null) {
+            resultSink.close();
+        }
     }
 }
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import org.copperengine.core.DependencyInjector;
+import org.copperengine.core.EngineIdProviderBean;
+import org.copperengine.core.batcher.RetryingTxnBatchRunner;
+import org.copperengine.core.batcher.impl.BatcherImpl;
+import org.copperengine.core.common.DefaultProcessorPoolManager;
+import org.copperengine.core.common.JdkRandomUUIDFactory;
+import org.copperengine.core.common.WorkflowRepository;
+import org.copperengine.core.persistent.H2Dialect;
+import org.copperengine.core.persistent.PersistentPriorityProcessorPool;
+import org.copperengine.core.persistent.PersistentProcessorPool;
+import org.copperengine.core.persistent.PersistentScottyEngine;
+import org.copperengine.core.persistent.ScottyDBStorage;
+import org.copperengine.core.persistent.StandardJavaSerializer;
+import org.copperengine.core.persistent.txn.CopperTransactionController;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+
+/**
+ * A {@link PersistentScottyEngine} for one engine shard, with its own embedded H2 database.
+ * The workflow instances, their wait registrations and the responses are stored in the database,
+ * so the workflows in flight survive a restart.
+ * <p>
+ * The engine does not write each change in a transaction of its own: COPPER's batcher collects the response inserts
+ * and the workflow updates of all processor threads and writes them with JDBC batches,
+ * and {@link EngineShards#runBatch(java.util.List)} inserts the new workflows of a shard in one transaction.
+ * The serialized workflow state is compressed.
+ */
+public class DurableEngine implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(DurableEngine.class);
+
+    private final JdbcConnectionPool dataSource;
+    private final WorkflowRepository repository;
+    private final BatcherImpl batcher;
+    private final H2Dialect dialect;
+    private final PersistentScottyEngine engine;
+
+    private DurableEngine(JdbcConnectionPool dataSource, WorkflowRepository repository, BatcherImpl batcher,
+                          H2Dialect dialect, PersistentScottyEngine engine) {
+        this.dataSource = dataSource;
+        this.repository = repository;
+        this.batcher = batcher;
+        this.dialect = dialect;
+        this.engine = engine;
+    }
+
+    /**
+     * Creates and starts the engine of a shard; the database and its schema are created on first use.
+     * The workflows found in the database continue where they were interrupted.
+     */
+    public static DurableEngine create(AppConfig config, int shard, DependencyInjector dependencyInjector,
+                                       WorkflowRepository repository, int processorPoolThreads) throws Exception {
+        String databasePath = config.persistentDatabasePath() + "-" + shard;
+        var dataSource = JdbcConnectionPool.create("jdbc:h2:file:" + databasePath, "sa", "");
+        dataSource.setMaxConnections(config.persistentMaxConnections());
+        H2Dialect.checkAndCreateSchema(dataSource);
+        repository.start();
+
+        var engineIdProvider = new EngineIdProviderBean("team-creation-" + shard);
+        var serializer = new StandardJavaSerializer();
+        serializer.setCompress(true);
+
+        var dialect = new H2Dialect();
+        dialect.setDataSource(dataSource);
+        dialect.setWfRepository(repository);
+        dialect.setEngineIdProvider(engineIdProvider);
+        dialect.setSerializer(serializer);
+        dialect.startup();
+
+        var batchRunner = new RetryingTxnBatchRunner<>();
+        batchRunner.setDataSource(dataSource);
+        var batcher = new BatcherImpl(config.persistentBatcherThreads());
+        batcher.setBatchRunner(batchRunner);
+        batcher.startup();
+
+        var transactionController = new CopperTransactionController();
+        transactionController.setDataSource(dataSource);
+
+        var dbStorage = new ScottyDBStorage();
+        dbStorage.setDialect(dialect);
+        dbStorage.setBatcher(batcher);
+        dbStorage.setTransactionController(transactionController);
+
+        var pools = new ArrayList<PersistentProcessorPool>();
+        pools.add(new PersistentPriorityProcessorPool(PersistentProcessorPool.DEFAULT_POOL_ID, transactionController, processorPoolThreads));
+        if(config.memberProcessorPoolThreads() > 0) {
+            pools.add(new PersistentPriorityProcessorPool(DefaultDependencyInjector.MEMBER_PROCESSOR_POOL_ID, transactionController,
+                    config.memberProcessorPoolThreads()));
+        }
+        var ppManager = new DefaultProcessorPoolManager<PersistentProcessorPool>();
+        ppManager.setProcessorPools(pools);
+
+        var engine = new PersistentScottyEngine();
+        engine.setIdFactory(new JdkRandomUUIDFactory());
+        engine.setEngineIdProvider(engineIdProvider);
+        engine.setWfRepository(repository);
+        engine.setDbStorage(dbStorage);
+        engine.setProcessorPoolManager(ppManager);
+        engine.setDependencyInjector(dependencyInjector);
+        engine.startup();
+        logger.info("Persistent engine of shard {} started with database {}", shard, databasePath);
+        return new DurableEngine(dataSource, repository, batcher, dialect, engine);
+    }
+
+    public PersistentScottyEngine getEngine() {
+        return engine;
+    }
+
+    public BatcherImpl getBatcher() {
+        return batcher;
+    }
+
+    public H2Dialect getDialect() {
+        return dialect;
+    }
+
+    /**
+     * Shuts down the engine after the pending batches have been written; the workflows in flight stay in the database.
+     */
+    @Override
+    public void close() {
+        engine.shutdown();
+        batcher.shutdown();
+        repository.shutdown();
+        dataSource.dispose();
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import org.copperengine.core.ProcessingEngine;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers the responses of the recruiting requests to the engine shard whose workflow is waiting for them.
+ * The correlation ID of a request consists of its number and the shard ({@code <number>@<shard>}),
+ * so a response is routed without a lookup table shared by the shards,
+ * and a workflow can derive the IDs of consecutive requests from the number of the first one.
+ */
+class EngineRouter {
+    private static final AtomicLong requestCounter = new AtomicLong();
+
+    private volatile ProcessingEngine[] engines = new ProcessingEngine[0];
+
+    void setEngine(int shard, ProcessingEngine engine) {
+        ProcessingEngine[] current = engines;
+        if(shard < current.length && current[shard] == engine) {
+            // the usual case: the injector sets the same engine for each workflow of the shard
+            return;
+        }
+        synchronized(this) {
+            var copy = Arrays.copyOf(engines, Math.max(engines.length, shard + 1));
+            copy[shard] = engine;
+            engines = copy;
+        }
+    }
+
+    ProcessingEngine engineFor(String correlationId) {
+        return engines[shardOf(correlationId)];
+    }
+
+    static String createCorrelationId(int shard) {
+        return correlationId(nextRequestNumbers(1), shard);
+    }
+
+    /**
+     * Reserves {@code count} consecutive request numbers.
+     * @return the first of them
+     */
+    static long nextRequestNumbers(int count) {
+        return requestCounter.getAndAdd(count) + 1;
+    }
+
+    /**
+     * Lets the following requests start at {@code first}, so that their correlation IDs
+     * do not collide with those of the requests awaited by workflows recovered from a database.
+     */
+    static void startRequestNumbersAt(long first) {
+        requestCounter.set(first - 1);
+    }
+
+    static String correlationId(long requestNumber, int shard) {
+        return Long.toString(requestNumber) + '@' + shard;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the correlation ID does not end with {@code @<shard>}
+     */
+    static int shardOf(String correlationId) {
+        int separator = correlationId.lastIndexOf('@');
+        if(separator < 0) {
+            throw new IllegalArgumentException("Not a routable correlation ID: " + correlationId);
+        }
+        return Integer.parseInt(correlationId, separator + 1, correlationId.length(), 10);
+    }
+}
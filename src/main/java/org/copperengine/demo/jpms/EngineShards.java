@@ -0,0 +1,204 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import org.copperengine.core.CopperException;
+import org.copperengine.core.ProcessingEngine;
+import org.copperengine.core.WorkflowInstanceDescr;
+import org.copperengine.core.tranzient.TransientScottyEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A set of independent engines, each with its own processor pools and ticket pool.
+ * A workflow is assigned to a shard by the hash of its ID, so the same ID always runs on the same engine.
+ * <p>
+ * Transient engines report their number of workflow instances. The workflows of persistent engines live in the database,
+ * so {@link #durable(List) durable} shards count the workflows started by this process themselves
+ * (they must be registered with the {@link TeamCreationEvents}).
+ * Their workflow IDs carry the start time of the process, so that they do not clash with the IDs of the workflows
+ * recovered from the database.
+ */
+public class EngineShards implements EngineShardsMXBean, TeamCreationListener {
+    private static final Logger logger = LoggerFactory.getLogger(EngineShards.class);
+
+    private final List<ProcessingEngine> engines;
+    private final List<DurableEngine> durableEngines;
+    private final AtomicLongArray startedCounts;
+    private final boolean countsWorkflows;
+    private final AtomicIntegerArray runningCounts;
+    private final String idSuffix;
+
+    public EngineShards(List<TransientScottyEngine> engines) {
+        this(engines, List.of(), false, "");
+    }
+
+    private EngineShards(List<? extends ProcessingEngine> engines, List<DurableEngine> durableEngines,
+                         boolean countsWorkflows, String idSuffix) {
+        if(engines.isEmpty()) {
+            throw new IllegalArgumentException("At least one engine is required.");
+        }
+        this.engines = List.copyOf(engines);
+        this.durableEngines = List.copyOf(durableEngines);
+        this.startedCounts = new AtomicLongArray(engines.size());
+        this.countsWorkflows = countsWorkflows;
+        this.runningCounts = new AtomicIntegerArray(engines.size());
+        this.idSuffix = idSuffix;
+    }
+
+    /**
+     * Creates shards of persistent engines; {@link #shutdown()} closes them.
+     */
+    public static EngineShards durable(List<DurableEngine> durableEngines) {
+        var engines = new ArrayList<ProcessingEngine>(durableEngines.size());
+        durableEngines.forEach(durableEngine -> engines.add(durableEngine.getEngine()));
+        return new EngineShards(engines, durableEngines, true, "." + Long.toString(System.currentTimeMillis(), Character.MAX_RADIX));
+    }
+
+    public static int shardOf(String workflowId, int shardCount) {
+        return Math.floorMod(workflowId.hashCode(), shardCount);
+    }
+
+    /**
+     * @return a workflow ID consisting of the prefix and the number, which is also unique across restarts for durable shards
+     */
+    public String workflowId(String prefix, long number) {
+        return prefix + number + idSuffix;
+    }
+
+    public void run(WorkflowInstanceDescr<?> descr) throws CopperException {
+        int shard = shardOf(descr.getId(), engines.size());
+        if(countsWorkflows) {
+            runningCounts.incrementAndGet(shard);
+        }
+        try {
+            engines.get(shard).run(descr);
+        } catch (CopperException | RuntimeException e) {
+            if(countsWorkflows) {
+                runningCounts.decrementAndGet(shard);
+            }
+            throw e;
+        }
+        startedCounts.incrementAndGet(shard);
+    }
+
+    /**
+     * Starts the workflows with one {@code runBatch} per shard, which a persistent engine inserts in a single transaction.
+     * @return the workflows that could not be started because the batch of their shard failed
+     */
+    public List<WorkflowInstanceDescr<?>> runBatch(List<WorkflowInstanceDescr<?>> descrs) {
+        var batches = new ArrayList<List<WorkflowInstanceDescr<?>>>(engines.size());
+        for(int shard = 0; shard < engines.size(); shard++) {
+            batches.add(new ArrayList<>());
+        }
+        for(WorkflowInstanceDescr<?> descr : descrs) {
+            batches.get(shardOf(descr.getId(), engines.size())).add(descr);
+        }
+        List<WorkflowInstanceDescr<?>> failed = new ArrayList<>();
+        for(int shard = 0; shard < engines.size(); shard++) {
+            var batch = batches.get(shard);
+            if(batch.isEmpty()) {
+                continue;
+            }
+            if(countsWorkflows) {
+                runningCounts.addAndGet(shard, batch.size());
+            }
+            try {
+                engines.get(shard).runBatch(batch);
+                startedCounts.addAndGet(shard, batch.size());
+            } catch (CopperException | RuntimeException e) {
+                logger.error("Cannot start {} workflows on shard {}", batch.size(), shard, e);
+                if(countsWorkflows) {
+                    runningCounts.addAndGet(shard, -batch.size());
+                }
+                failed.addAll(batch);
+            }
+        }
+        return failed;
+    }
+
+    @Override
+    public void workflowCompleted(String workflowId, boolean teamCreated) {
+        // the workflows recovered from the database were not counted when they were started
+        if(countsWorkflows && workflowId.endsWith(idSuffix)) {
+            runningCounts.decrementAndGet(shardOf(workflowId, engines.size()));
+        }
+    }
+
+    public List<ProcessingEngine> getEngines() {
+        return engines;
+    }
+
+    /**
+     * @return the persistent engines with their databases, or an empty list for transient shards
+     */
+    public List<DurableEngine> getDurableEngines() {
+        return durableEngines;
+    }
+
+    public int getNumberOfWorkflowInstances() {
+        int count = 0;
+        for(int shard = 0; shard < engines.size(); shard++) {
+            count += getNumberOfWorkflowInstances(shard);
+        }
+        return count;
+    }
+
+    private int getNumberOfWorkflowInstances(int shard) {
+        return countsWorkflows ? runningCounts.get(shard) : ((TransientScottyEngine) engines.get(shard)).getNumberOfWorkflowInstances();
+    }
+
+    public void shutdown() {
+        if(durableEngines.isEmpty()) {
+            engines.forEach(ProcessingEngine::shutdown);
+        } else {
+            durableEngines.forEach(DurableEngine::close);
+        }
+    }
+
+    @Override
+    public int getShardCount() {
+        return engines.size();
+    }
+
+    @Override
+    public int[] getWorkflowInstanceCounts() {
+        var counts = new int[engines.size()];
+        for(int shard = 0; shard < counts.length; shard++) {
+            counts[shard] = getNumberOfWorkflowInstances(shard);
+        }
+        return counts;
+    }
+
+    @Override
+    public int getTotalWorkflowInstanceCount() {
+        return getNumberOfWorkflowInstances();
+    }
+
+    @Override
+    public long[] getStartedCounts() {
+        var counts = new long[startedCounts.length()];
+        for(int i = 0; i < counts.length; i++) {
+            counts[i] = startedCounts.get(i);
+        }
+        return counts;
+    }
+}
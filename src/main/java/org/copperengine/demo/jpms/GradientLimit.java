@@ -0,0 +1,94 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+/**
+ * A gradient (Vegas-style) limit: the limit is scaled by the ratio between the long-term average latency and the current latency,
+ * so that it shrinks as soon as requests start queueing at the service and grows while the latency stays at its baseline.
+ * A small queue allowance ({@code sqrt(limit)}) lets the limit probe for more capacity. Failures halve the gradient.
+ */
+public class GradientLimit implements ConcurrencyLimit {
+    private static final double TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+    private static final int LONG_WINDOW = 600;
+
+    private volatile int minLimit;
+    private volatile int maxLimit;
+    private volatile int limit;
+    private double estimatedLimit;
+    private double longRttNanos;
+
+    public GradientLimit(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = initialLimit;
+        this.estimatedLimit = initialLimit;
+    }
+
+    @Override
+    public int getLimit() {
+        return limit;
+    }
+
+    @Override
+    public synchronized void onSample(long rttNanos, int inFlight, boolean dropped) {
+        if(rttNanos <= 0) {
+            return;
+        }
+        if(longRttNanos == 0) {
+            longRttNanos = rttNanos;
+        } else {
+            longRttNanos += (rttNanos - longRttNanos) / LONG_WINDOW;
+        }
+        // let the baseline recover quickly after a period of high latency
+        if(longRttNanos / rttNanos > 2) {
+            longRttNanos *= 0.95;
+        }
+        // do not grow the limit if it is not used
+        if(!dropped && inFlight < estimatedLimit / 2) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRttNanos / rttNanos));
+        if(dropped) {
+            gradient = 0.5;
+        }
+        double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        newLimit = estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        limit = (int) estimatedLimit;
+    }
+
+    @Override
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    @Override
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    @Override
+    public synchronized void setBounds(int minLimit, int maxLimit) {
+        if(minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Invalid bounds: [" + minLimit + ", " + maxLimit + "]");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, estimatedLimit));
+        limit = (int) estimatedLimit;
+    }
+}
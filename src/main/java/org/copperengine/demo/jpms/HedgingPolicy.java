@@ -0,0 +1,130 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides when a duplicate of a slow request should be sent.
+ * The hedging delay is the configured percentile of the response times observed in the previous window,
+ * and the number of hedged requests is bounded by a percentage of the requests sent.
+ */
+public class HedgingPolicy implements HedgingPolicyMXBean {
+    private static final int MIN_SAMPLES = 100;
+
+    private final double percentile;
+    private final long minDelayNanos;
+    private final long windowNanos;
+    private final int budgetPercent;
+
+    private final LatencyHistogram window = new LatencyHistogram();
+    private final AtomicBoolean updating = new AtomicBoolean();
+    private volatile long windowEnd;
+    private volatile long delayNanos = -1;
+
+    private final LongAdder requestCount = new LongAdder();
+    private final LongAdder hedgeCount = new LongAdder();
+    private final LongAdder hedgeWinCount = new LongAdder();
+    private final LongAdder budgetExhaustedCount = new LongAdder();
+
+    /**
+     * @param percentile the percentile (0-100) of the response time after which a request is hedged
+     * @param minDelayMillis the lower bound of the hedging delay
+     * @param windowMillis the period after which the hedging delay is recomputed
+     * @param budgetPercent the maximum number of hedged requests in percent of the requests sent
+     */
+    public HedgingPolicy(double percentile, long minDelayMillis, long windowMillis, int budgetPercent) {
+        this.percentile = percentile;
+        this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelayMillis);
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.budgetPercent = budgetPercent;
+        this.windowEnd = System.nanoTime() + windowNanos;
+    }
+
+    /**
+     * @return the delay after which a request should be hedged, or -1 if not enough responses have been observed yet
+     */
+    public long getDelayNanos() {
+        return delayNanos;
+    }
+
+    public void onRequestSent() {
+        requestCount.increment();
+    }
+
+    /**
+     * Records the response time of a successful request.
+     */
+    public void recordResponse(long rttNanos) {
+        window.record(rttNanos);
+        long now = System.nanoTime();
+        if(now - windowEnd >= 0 && updating.compareAndSet(false, true)) {
+            try {
+                if(window.getCount() >= MIN_SAMPLES) {
+                    delayNanos = Math.max(minDelayNanos, window.getValueAtPercentile(percentile));
+                    window.reset();
+                }
+                windowEnd = now + windowNanos;
+            } finally {
+                updating.set(false);
+            }
+        }
+    }
+
+    /**
+     * @return true if the hedging budget allows sending a duplicate request
+     */
+    public boolean tryHedge() {
+        if(hedgeCount.sum() * 100 >= requestCount.sum() * budgetPercent) {
+            budgetExhaustedCount.increment();
+            return false;
+        }
+        hedgeCount.increment();
+        return true;
+    }
+
+    public void onHedgeWon() {
+        hedgeWinCount.increment();
+    }
+
+    @Override
+    public long getHedgeDelayMillis() {
+        long delay = delayNanos;
+        return (delay < 0) ? -1 : TimeUnit.NANOSECONDS.toMillis(delay);
+    }
+
+    @Override
+    public long getRequestCount() {
+        return requestCount.sum();
+    }
+
+    @Override
+    public long getHedgeCount() {
+        return hedgeCount.sum();
+    }
+
+    @Override
+    public long getHedgeWinCount() {
+        return hedgeWinCount.sum();
+    }
+
+    @Override
+    public long getBudgetExhaustedCount() {
+        return budgetExhaustedCount.sum();
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+/**
+ * The summary of a {@link LatencyHistogram}, in milliseconds. Exposed as composite data by the MXBeans.
+ */
+public class LatencySnapshot {
+    private final long count;
+    private final double mean;
+    private final double p50;
+    private final double p99;
+    private final double p999;
+    private final double max;
+
+    public LatencySnapshot(LatencyHistogram histogram) {
+        this.count = histogram.getCount();
+        this.mean = millis(histogram.getMean());
+        this.p50 = millis(histogram.getValueAtPercentile(50));
+        this.p99 = millis(histogram.getValueAtPercentile(99));
+        this.p999 = millis(histogram.getValueAtPercentile(99.9));
+        this.max = millis(histogram.getMax());
+    }
+
+    private static double millis(double nanos) {
+        return nanos / 1_000_000;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMeanMillis() {
+        return mean;
+    }
+
+    public double getP50Millis() {
+        return p50;
+    }
+
+    public double getP99Millis() {
+        return p99;
+    }
+
+    public double getP999Millis() {
+        return p999;
+    }
+
+    public double getMaxMillis() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d, mean=%.2f, p50=%.2f, p99=%.2f, p999=%.2f, max=%.2f ms", count, mean, p50, p99, p999, max);
+    }
+}
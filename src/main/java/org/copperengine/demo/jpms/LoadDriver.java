@@ -0,0 +1,177 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import org.copperengine.core.CopperException;
+import org.copperengine.core.WorkflowInstanceDescr;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Starts workflows according to an arrival model and records their end-to-end latency.
+ * <ul>
+ *     <li>CLOSED_LOOP: keeps {@code concurrency} workflows in flight; a new workflow is started when one completes.</li>
+ *     <li>CONSTANT_RATE: starts workflows at fixed intervals ({@code targetRate} per second), regardless of completions.</li>
+ *     <li>POISSON: starts workflows with exponentially distributed inter-arrival times (mean rate {@code targetRate}).</li>
+ * </ul>
+ * In the open-loop models the latency is measured from the intended start time, so that a stalled driver does not hide queueing delays.
+ * Only workflows started after the warm-up phase are recorded. Completion is signalled by {@link TeamCreationListener} events.
+ */
+public class LoadDriver implements TeamCreationListener {
+    private static final Logger logger = LoggerFactory.getLogger(LoadDriver.class);
+    private static final String WORKFLOW_NAME = "TeamCreationWorkFlow";
+
+    public enum ArrivalModel {CLOSED_LOOP, CONSTANT_RATE, POISSON}
+
+    private final EngineShards shards;
+    private final Supplier<TeamCreationRequest> requestFactory;
+    private final ArrivalModel arrivalModel;
+    private final double targetRate;
+    private final long warmupNanos;
+    private final long measurementNanos;
+
+    private final Map<String, Long> startTimes = new ConcurrentHashMap<>();
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private final AtomicLong idCounter = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong notStartedCount = new AtomicLong();
+    private final long drainTimeoutSeconds;
+    private final Semaphore permits;
+    private final CountDownLatch drained = new CountDownLatch(1);
+    private volatile boolean draining;
+    private volatile long measurementStart = Long.MAX_VALUE;
+
+    public LoadDriver(EngineShards shards, Supplier<TeamCreationRequest> requestFactory, ArrivalModel arrivalModel,
+                      int concurrency, double targetRate, long warmupSeconds, long measurementSeconds, long drainTimeoutSeconds) {
+        this.shards = shards;
+        this.requestFactory = requestFactory;
+        this.arrivalModel = arrivalModel;
+        this.targetRate = targetRate;
+        this.warmupNanos = TimeUnit.SECONDS.toNanos(warmupSeconds);
+        this.measurementNanos = TimeUnit.SECONDS.toNanos(measurementSeconds);
+        this.permits = new Semaphore(concurrency);
+        this.drainTimeoutSeconds = drainTimeoutSeconds;
+    }
+
+    public static LoadDriver create(EngineShards shards, Supplier<TeamCreationRequest> requestFactory, AppConfig config) {
+        return new LoadDriver(shards, requestFactory, config.loadArrivalModel(), config.loadConcurrency(),
+                config.loadTargetRate(), config.loadWarmupSeconds(), config.loadMeasurementSeconds(), config.loadDrainTimeoutSeconds());
+    }
+
+    public void run() throws InterruptedException {
+        logger.info("Running {} load: warm-up {} s, measurement {} s...", arrivalModel,
+                TimeUnit.NANOSECONDS.toSeconds(warmupNanos), TimeUnit.NANOSECONDS.toSeconds(measurementNanos));
+        long start = System.nanoTime();
+        long end = start + warmupNanos + measurementNanos;
+        boolean warmingUp = warmupNanos > 0;
+        if(!warmingUp) {
+            measurementStart = start;
+        }
+        double meanIntervalNanos = TimeUnit.SECONDS.toNanos(1) / targetRate;
+        long nextArrival = start;
+        long now;
+        while((now = System.nanoTime()) < end) {
+            if(warmingUp && now - start >= warmupNanos) {
+                warmingUp = false;
+                measurementStart = now;
+                logger.info("Warm-up completed. Measuring...");
+            }
+            if(arrivalModel == ArrivalModel.CLOSED_LOOP) {
+                if(permits.tryAcquire(10, TimeUnit.MILLISECONDS)) {
+                    startWorkflow(System.nanoTime());
+                }
+            } else {
+                if(now < nextArrival) {
+                    LockSupport.parkNanos(Math.min(nextArrival - now, end - now));
+                    continue;
+                }
+                startWorkflow(nextArrival);
+                nextArrival += (arrivalModel == ArrivalModel.POISSON)
+                        ? (long) (-meanIntervalNanos * Math.log(1 - ThreadLocalRandom.current().nextDouble()))
+                        : (long) meanIntervalNanos;
+            }
+        }
+        draining = true;
+        if(inFlight.get() == 0) {
+            drained.countDown();
+        }
+        logger.info("Waiting for {} workflows to complete...", inFlight.get());
+        if(!drained.await(drainTimeoutSeconds, TimeUnit.SECONDS)) {
+            logger.warn("{} workflows did not complete within {} s.", inFlight.get(), drainTimeoutSeconds);
+        }
+        report(Math.min(end, System.nanoTime()) - measurementStart);
+    }
+
+    private void startWorkflow(long intendedStart) {
+        String id = shards.workflowId("LOAD-", idCounter.incrementAndGet());
+        startTimes.put(id, intendedStart);
+        inFlight.incrementAndGet();
+        try {
+            shards.run(new WorkflowInstanceDescr<>(WORKFLOW_NAME, requestFactory.get(), id, null, null));
+        } catch (CopperException | RuntimeException e) {
+            // e.g. a RejectedExecutionException if the engine has no ticket left; the driver keeps going
+            logger.error("Cannot start workflow {}", id, e);
+            if(intendedStart >= measurementStart) {
+                notStartedCount.incrementAndGet();
+            }
+            workflowCompleted(id, false);
+        }
+    }
+
+    @Override
+    public void workflowCompleted(String workflowId, boolean teamCreated) {
+        Long start = startTimes.remove(workflowId);
+        if(start == null) {
+            return;
+        }
+        if(start >= measurementStart) {
+            histogram.record(System.nanoTime() - start);
+            if(!teamCreated) {
+                failedCount.incrementAndGet();
+            }
+        }
+        if(arrivalModel == ArrivalModel.CLOSED_LOOP) {
+            permits.release();
+        }
+        if(inFlight.decrementAndGet() == 0 && draining) {
+            drained.countDown();
+        }
+    }
+
+    private void report(long measuredNanos) {
+        long count = histogram.getCount();
+        double seconds = Math.max(1, measuredNanos) / 1e9;
+        logger.info("Completed {} workflows in {} s ({} failed, {} of them not started). Throughput: {} workflows/s",
+                count, String.format("%.1f", seconds), failedCount.get(), notStartedCount.get(), String.format("%.1f", count / seconds));
+        logger.info("Latency: {}", new LatencySnapshot(histogram));
+    }
+
+    public LatencyHistogram getHistogram() {
+        return histogram;
+    }
+}
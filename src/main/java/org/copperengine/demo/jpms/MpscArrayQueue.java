@@ -0,0 +1,96 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * A bounded, lock-free queue for many producers and a single consumer.
+ * Only the consumer thread may call {@link #poll()} and {@link #drain(Consumer, int)}.
+ */
+public class MpscArrayQueue<E> {
+    private final AtomicReferenceArray<E> buffer;
+    private final int capacity;
+    private final int mask;
+    private final AtomicLong producerIndex = new AtomicLong();
+    private final AtomicLong consumerIndex = new AtomicLong();
+
+    public MpscArrayQueue(int requestedCapacity) {
+        if(requestedCapacity < 2) {
+            throw new IllegalArgumentException("capacity must be at least 2: " + requestedCapacity);
+        }
+        this.capacity = Integer.highestOneBit(requestedCapacity - 1) << 1;
+        this.mask = capacity - 1;
+        this.buffer = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * @return false if the queue is full
+     */
+    public boolean offer(E e) {
+        if(e == null) {
+            throw new NullPointerException();
+        }
+        long index;
+        do {
+            index = producerIndex.get();
+            if(index - consumerIndex.get() >= capacity) {
+                return false;
+            }
+        } while(!producerIndex.compareAndSet(index, index + 1));
+        buffer.lazySet((int) (index & mask), e);
+        return true;
+    }
+
+    public E poll() {
+        long index = consumerIndex.get();
+        int offset = (int) (index & mask);
+        E e = buffer.get(offset);
+        if(e == null) {
+            if(index == producerIndex.get()) {
+                return null;
+            }
+            // a producer has claimed the slot but not yet published the element
+            do {
+                Thread.onSpinWait();
+                e = buffer.get(offset);
+            } while(e == null);
+        }
+        buffer.lazySet(offset, null);
+        consumerIndex.lazySet(index + 1);
+        return e;
+    }
+
+    public int drain(Consumer<E> consumer, int limit) {
+        int count = 0;
+        E e;
+        while(count < limit && (e = poll()) != null) {
+            consumer.accept(e);
+            count++;
+        }
+        return count;
+    }
+
+    public int size() {
+        return (int) Math.max(0, producerIndex.get() - consumerIndex.get());
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends each team as a line of JSON (NDJSON) to a file.
+ * The lines are collected in a buffer and written to the {@link FileChannel} when the buffer is full or the sink flushes.
+ */
+public class NdjsonFileResultWriter implements ResultWriter {
+    private static final JsonFactory jsonFactory = new JsonFactory();
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final JsonGenerator generator;
+    private final boolean syncOnFlush;
+    private final long initialSize;
+    private volatile long bytesWritten;
+
+    /**
+     * @param syncOnFlush if true, each flush also forces the data to the storage device
+     */
+    public NdjsonFileResultWriter(Path file, boolean syncOnFlush) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.initialSize = channel.size();
+        this.generator = jsonFactory.createGenerator(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+        // one object per line instead of the default space between root values
+        generator.setRootValueSeparator(null);
+        this.syncOnFlush = syncOnFlush;
+    }
+
+    @Override
+    public void write(String workflowId, Team team) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("workflowId", workflowId);
+        generator.writeFieldName("leader");
+        writePerson(team.getLeader());
+        generator.writeArrayFieldStart("members");
+        for(Person member : team.getMembers()) {
+            writePerson(member);
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    private void writePerson(Person person) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("name", person.getFirstName());
+        generator.writeStringField("surname", person.getLastName());
+        generator.writeStringField("gender", person.isFemale() ? "female" : "male");
+        generator.writeStringField("region", person.getLocation());
+        generator.writeEndObject();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        generator.flush();
+        if(syncOnFlush) {
+            channel.force(false);
+        }
+        bytesWritten = channel.size() - initialSize;
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    @Override
+    public void close() throws IOException {
+        generator.close();
+        channel.close();
+    }
+}
@@ -15,20 +15,31 @@
  */
 package org.copperengine.demo.jpms;
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.util.Objects;
 
-public class Person implements Serializable {
+/**
+ * An immutable person. The region is stored as a code of the {@link RegionDictionary},
+ * which keeps the state of the waiting workflows small.
+ * Persons are serialized with their region name, so the serialized form does not depend on the dictionary.
+ */
+public final class Person implements Serializable {
     private static final long serialVersionUID = 1L;
 
     private final String firstName;
     private final String lastName;
-    private final String location;
+    private final char regionCode;
     private final boolean female;
 
     public Person(String firstName, String lastName, String location, boolean female) {
-        this.firstName = firstName;
-        this.lastName = lastName;
-        this.location = location;
+        this.firstName = Objects.requireNonNull(firstName, "firstName");
+        this.lastName = Objects.requireNonNull(lastName, "lastName");
+        this.regionCode = RegionDictionary.codeOf(Objects.requireNonNull(location, "location"));
         this.female = female;
     }
 
@@ -41,7 +52,7 @@ public class Person implements Serializable {
     }
 
     public String getLocation() {
-        return location;
+        return RegionDictionary.regionOf(regionCode);
     }
 
     public boolean isFemale() {
@@ -52,8 +63,73 @@ public class Person implements Serializable {
         return firstName + " " + lastName;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) return true;
+        if(!(o instanceof Person)) return false;
+        var other = (Person) o;
+        return regionCode == other.regionCode && female == other.female
+                && firstName.equals(other.firstName) && lastName.equals(other.lastName);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * (31 * firstName.hashCode() + lastName.hashCode()) + regionCode) + Boolean.hashCode(female);
+    }
+
     @Override
     public String toString() {
-        return firstName + " " + lastName + " (" + location + ")";
+        return firstName + " " + lastName + " (" + getLocation() + ")";
+    }
+
+    private Object writeReplace() {
+        return new SerializedPerson(this);
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("Persons are deserialized from their SerializedPerson form.");
+    }
+
+    /**
+     * The serialized form of a {@link Person}, which replaces the region code with the region name.
+     * It is written without field descriptors; the region name is written as an object,
+     * so the persons of a team from the same region share it.
+     */
+    private static final class SerializedPerson implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private static final ObjectStreamField[] serialPersistentFields = {};
+
+        // not final, so that readObject can set them
+        private String firstName;
+        private String lastName;
+        private String location;
+        private boolean female;
+
+        private SerializedPerson(Person person) {
+            this.firstName = person.firstName;
+            this.lastName = person.lastName;
+            this.location = person.getLocation();
+            this.female = person.female;
+        }
+
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            out.defaultWriteObject();
+            out.writeUTF(firstName);
+            out.writeUTF(lastName);
+            out.writeObject(location);
+            out.writeBoolean(female);
+        }
+
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            firstName = in.readUTF();
+            lastName = in.readUTF();
+            location = (String) in.readObject();
+            female = in.readBoolean();
+        }
+
+        private Object readResolve() {
+            return new Person(firstName, lastName, location, female);
+        }
     }
 }
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes the persons returned by the recruiting service by streaming the response through a {@link JsonParser}.
+ * Only the fields needed to create a {@link Person} are read; no intermediate String or tree is created.
+ */
+public final class PersonDecoder {
+    // JsonFactory is thread-safe and caches the symbol tables used by its parsers
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    private PersonDecoder() {
+    }
+
+    public static Person decode(InputStream in) throws IOException {
+        try(JsonParser parser = jsonFactory.createParser(in)) {
+            if(parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected a JSON object but found: " + parser.getCurrentToken());
+            }
+            return readPerson(parser);
+        }
+    }
+
+    /**
+     * Decodes the response of a bulk request ({@code amount > 1}), which is an array of persons.
+     * A single object is also accepted, because the service returns an object if only one person is requested.
+     */
+    public static List<Person> decodeList(InputStream in) throws IOException {
+        try(JsonParser parser = jsonFactory.createParser(in)) {
+            JsonToken token = parser.nextToken();
+            if(token == JsonToken.START_OBJECT) {
+                return List.of(readPerson(parser));
+            }
+            if(token != JsonToken.START_ARRAY) {
+                throw new IOException("Expected a JSON array but found: " + token);
+            }
+            var persons = new ArrayList<Person>();
+            while((token = parser.nextToken()) == JsonToken.START_OBJECT) {
+                persons.add(readPerson(parser));
+            }
+            if(token != JsonToken.END_ARRAY) {
+                throw new IOException("Unexpected token: " + token);
+            }
+            return persons;
+        }
+    }
+
+    private static Person readPerson(JsonParser parser) throws IOException {
+        String firstName = null;
+        String lastName = null;
+        String gender = null;
+        String location = null;
+        String fieldName;
+        while((fieldName = parser.nextFieldName()) != null) {
+            JsonToken token = parser.nextToken();
+            switch(fieldName) {
+                case "name": firstName = parser.getText(); break;
+                case "surname": lastName = parser.getText(); break;
+                case "gender": gender = parser.getText(); break;
+                case "region": location = parser.getText(); break;
+                default:
+                    if(token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                        parser.skipChildren();
+                    }
+            }
+        }
+        if(parser.getCurrentToken() != JsonToken.END_OBJECT) {
+            throw new IOException("Unexpected token: " + parser.getCurrentToken());
+        }
+        if(firstName == null || lastName == null || location == null) {
+            throw new IOException("Incomplete person: name=" + firstName + ", surname=" + lastName + ", region=" + location);
+        }
+        return new Person(firstName, lastName, location, "female".equals(gender));
+    }
+}
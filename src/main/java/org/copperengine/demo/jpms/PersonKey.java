@@ -0,0 +1,68 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import java.util.Objects;
+
+/**
+ * The constraints of a recruiting request: region and gender. A null value means that the constraint is not set.
+ */
+public final class PersonKey {
+    private static final PersonKey FEMALE = new PersonKey(null, Boolean.TRUE);
+    private static final PersonKey MALE = new PersonKey(null, Boolean.FALSE);
+
+    private final String region;
+    private final Boolean female;
+
+    public PersonKey(String region, Boolean female) {
+        this.region = region;
+        this.female = female;
+    }
+
+    public static PersonKey ofGender(boolean female) {
+        return female ? FEMALE : MALE;
+    }
+
+    public static PersonKey ofRegion(String region) {
+        return new PersonKey(region, null);
+    }
+
+    public String getRegion() {
+        return region;
+    }
+
+    public Boolean getFemale() {
+        return female;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) return true;
+        if(!(o instanceof PersonKey)) return false;
+        PersonKey other = (PersonKey) o;
+        return Objects.equals(region, other.region) && Objects.equals(female, other.female);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(region, female);
+    }
+
+    @Override
+    public String toString() {
+        return "region=" + region + ", gender=" + (female == null ? null : female ? "female" : "male");
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A cache of persons per {@link PersonKey}, which is refilled in the background with bulk requests.
+ * When the number of pooled persons for a key drops below the low watermark, a refill up to the high watermark is triggered.
+ * Only one refill per key is in flight, and after a refill that failed or added no person, the key is not refilled for a while.
+ * A person is handed out only once, and a name is pooled at most once per key, so a refill does not add duplicates.
+ * Pooled persons expire after {@code ttlMillis}; the expired persons of all keys are removed with each refill.
+ * The least recently used key is evicted when there are more than {@code maxKeys};
+ * callers that already hold its persons can still take them.
+ */
+public class PersonPool implements PersonPoolMXBean {
+    private static final Logger logger = LoggerFactory.getLogger(PersonPool.class);
+    private static final int MAX_AMOUNT = 500;
+    private static final long REFILL_BACKOFF_MILLIS = 1000;
+
+    private final RecruitingClient client;
+    private final int lowWatermark;
+    private final int highWatermark;
+    private final int maxKeys;
+    private final long ttlMillis;
+
+    // guarded by itself; in access order, so the eldest entry is the least recently used key
+    private final Map<PersonKey, Entry> entries;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder refillCount = new LongAdder();
+    private final LongAdder refillFailureCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    private static class PooledPerson {
+        private final Person person;
+        private final long fetchTime;
+
+        private PooledPerson(Person person, long fetchTime) {
+            this.person = person;
+            this.fetchTime = fetchTime;
+        }
+    }
+
+    private static class Entry {
+        private final PersonKey key;
+        private final Queue<PooledPerson> persons = new ConcurrentLinkedQueue<>();
+        private final Set<String> pooledNames = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicBoolean refilling = new AtomicBoolean();
+        private volatile long refillBackoffUntil;
+        private volatile boolean evicted;
+
+        private PooledPerson poll() {
+            PooledPerson pooled = persons.poll();
+            if(pooled != null) {
+                size.decrementAndGet();
+                pooledNames.remove(pooled.person.getFullName());
+            }
+            return pooled;
+        }
+
+        private Entry(PersonKey key) {
+            this.key = key;
+        }
+    }
+
+    public PersonPool(RecruitingClient client, int lowWatermark, int highWatermark, int maxKeys, long ttlMillis) {
+        if(lowWatermark < 0 || highWatermark <= lowWatermark) {
+            throw new IllegalArgumentException("Invalid watermarks: low=" + lowWatermark + ", high=" + highWatermark);
+        }
+        this.client = client;
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+        this.maxKeys = maxKeys;
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PersonKey, Entry> eldest) {
+                if(size() <= maxKeys) {
+                    return false;
+                }
+                evict(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * @return a pooled person satisfying the constraints or null, if the pool is currently empty for this key
+     */
+    public Person take(PersonKey key) {
+        Entry entry;
+        synchronized(entries) {
+            entry = entries.computeIfAbsent(key, Entry::new);
+        }
+        long now = System.currentTimeMillis();
+        Person person = null;
+        PooledPerson pooled;
+        while(person == null && (pooled = entry.poll()) != null) {
+            if(now - pooled.fetchTime > ttlMillis) {
+                evictionCount.increment();
+            } else {
+                person = pooled.person;
+            }
+        }
+        if(entry.size.get() < lowWatermark && now - entry.refillBackoffUntil >= 0) {
+            refill(entry);
+        }
+        if(person == null) {
+            missCount.increment();
+        } else {
+            hitCount.increment();
+        }
+        return person;
+    }
+
+    private void refill(Entry entry) {
+        if(!entry.refilling.compareAndSet(false, true)) {
+            return;
+        }
+        int amount = Math.min(MAX_AMOUNT, highWatermark - entry.size.get());
+        if(amount <= 0) {
+            entry.refilling.set(false);
+            return;
+        }
+        logger.debug("Refilling {} persons for {}", amount, entry.key);
+        client.fetch(entry.key, amount).whenComplete((persons, exc) -> {
+            int added = 0;
+            if(exc != null) {
+                refillFailureCount.increment();
+                logger.debug("Failed to refill persons for {}: {}", entry.key, exc.toString());
+            } else {
+                refillCount.increment();
+                added = add(entry, persons);
+            }
+            if(added == 0) {
+                entry.refillBackoffUntil = System.currentTimeMillis() + REFILL_BACKOFF_MILLIS;
+            }
+            // cleared only now, so that the takes during the refill do not trigger another one
+            entry.refilling.set(false);
+        });
+    }
+
+    /**
+     * @return the number of persons added to the pool
+     */
+    private int add(Entry entry, List<Person> persons) {
+        long now = System.currentTimeMillis();
+        expire(now);
+        if(entry.evicted) {
+            return 0;
+        }
+        int added = 0;
+        for(Person person : persons) {
+            if(entry.pooledNames.add(person.getFullName())) {
+                entry.persons.add(new PooledPerson(person, now));
+                entry.size.incrementAndGet();
+                added++;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Removes the expired persons of all keys.
+     * The persons of a key are ordered by their fetch time, so only the expired heads are visited.
+     */
+    private void expire(long now) {
+        Entry[] snapshot;
+        synchronized(entries) {
+            snapshot = entries.values().toArray(new Entry[0]);
+        }
+        for(Entry entry : snapshot) {
+            PooledPerson pooled;
+            while((pooled = entry.persons.peek()) != null && now - pooled.fetchTime > ttlMillis) {
+                if(entry.persons.remove(pooled)) {
+                    entry.size.decrementAndGet();
+                    entry.pooledNames.remove(pooled.person.getFullName());
+                    evictionCount.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops refilling the entry. Its persons are not removed, because a caller may still be taking them;
+     * they are counted as evicted and become garbage with the entry.
+     */
+    private void evict(Entry entry) {
+        entry.evicted = true;
+        evictionCount.add(entry.size.get());
+        logger.debug("Evicted persons for {}", entry.key);
+    }
+
+    @Override
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    @Override
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    @Override
+    public long getRefillCount() {
+        return refillCount.sum();
+    }
+
+    @Override
+    public long getRefillFailureCount() {
+        return refillFailureCount.sum();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    @Override
+    public int getKeyCount() {
+        synchronized(entries) {
+            return entries.size();
+        }
+    }
+
+    @Override
+    public int getPooledPersonCount() {
+        synchronized(entries) {
+            return entries.values().stream().mapToInt(e -> e.size.get()).sum();
+        }
+    }
+}
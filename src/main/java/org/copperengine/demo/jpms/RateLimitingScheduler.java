@@ -0,0 +1,45 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+/**
+ * Paces the recruiting calls issued by the adapter.
+ */
+public interface RateLimitingScheduler {
+    /**
+     * Schedules the action according to the rate limit.
+     * @return false if the action has been rejected because too many actions are pending
+     */
+    boolean schedule(Runnable action);
+
+    /**
+     * Called when a request started by a scheduled action has completed. Adaptive schedulers use this feedback to adjust their limit.
+     * @param dropped true if the request failed with a non-2xx response, an I/O error or a timeout
+     */
+    default void onRequestCompleted(long rttNanos, boolean dropped) {
+    }
+
+    /**
+     * Called instead of {@link #onRequestCompleted(long, boolean)} when a scheduled action did not send its request,
+     * for example because its deadline had already passed.
+     */
+    default void onRequestSkipped() {
+    }
+
+    int getPendingCount();
+
+    void shutdown();
+}
@@ -0,0 +1,392 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import org.asynchttpclient.AsyncCompletionHandler;
+import org.asynchttpclient.AsyncHttpClient;
+import org.asynchttpclient.ListenableFuture;
+import org.asynchttpclient.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.asynchttpclient.Dsl.asyncHttpClient;
+import static org.asynchttpclient.Dsl.config;
+
+/**
+ * Sends the (paced) HTTP requests to the recruiting service.
+ * The returned futures are completed on the HTTP I/O threads, so their callbacks must not block.
+ * <p>
+ * If a {@link HedgingPolicy} is given, a duplicate of a request that did not get a response within the hedging delay
+ * is sent, bypassing the scheduler, and the first successful response wins.
+ * If a {@link CircuitBreaker} is given, requests fail immediately while the breaker is open.
+ * <p>
+ * A request with a deadline is dropped if the deadline has passed before the scheduler releases it,
+ * and the HTTP request is aborted when the deadline passes.
+ * Cancelling the returned future aborts the request as well (or drops it, if it has not been sent yet).
+ */
+public class RecruitingClient {
+    private static final Logger logger = LoggerFactory.getLogger(RecruitingClient.class);
+
+    public static final int DEFAULT_REQUEST_TIMEOUT_MILLIS = 60_000;
+
+    private final String serviceUrl;
+    private final RateLimitingScheduler scheduler;
+    private final WorkflowMetrics metrics;
+    private final AsyncHttpClient client;
+    private final TimingWheel wheel;
+    private final HedgingPolicy hedging;
+    private final CircuitBreaker breaker;
+    private final RequestDeadlines deadlines;
+    private volatile int requestTimeoutMillis;
+
+    /**
+     * A logical request, which is sent once and possibly hedged once.
+     */
+    private class Exchange {
+        private final CompletableFuture<List<Person>> future = new CompletableFuture<>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                boolean cancelled = super.cancel(mayInterruptIfRunning);
+                if(cancelled) {
+                    abort();
+                }
+                return cancelled;
+            }
+        };
+        private final String url;
+        private final long deadlineNanos;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private volatile Attempt primary;
+        private volatile Attempt hedge;
+        private volatile TimingWheel.Timeout hedgeTimeout;
+
+        private Exchange(String url, long deadlineNanos) {
+            this.url = url;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        private void send(boolean hedged) {
+            var attempt = new Attempt(this, hedged);
+            if(hedged) {
+                hedge = attempt;
+            } else {
+                primary = attempt;
+            }
+            outstanding.incrementAndGet();
+            if(hedging != null) {
+                hedging.onRequestSent();
+            }
+            logger.trace("Getting url: {}", url);
+            metrics.onRequestSent();
+            try {
+                int timeoutMillis = (int) RequestDeadlines.remainingMillis(deadlineNanos, requestTimeoutMillis);
+                attempt.responseFuture = client.prepareGet(url).setRequestTimeout(Math.max(1, timeoutMillis)).execute(attempt);
+            } catch (RuntimeException e) {
+                attempt.onThrowable(e);
+            }
+            if(future.isCancelled()) {
+                // cancelled while the request was being sent
+                attempt.abort();
+            }
+        }
+
+        private void scheduleHedge() {
+            long delay = hedging.getDelayNanos();
+            if(delay >= 0) {
+                hedgeTimeout = wheel.schedule(this::onHedgeTimeout, delay, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        private void onHedgeTimeout() {
+            if(future.isDone() || RequestDeadlines.isExpired(deadlineNanos) || !hedging.tryHedge()) {
+                return;
+            }
+            if(breaker != null && !breaker.tryAcquire()) {
+                return;
+            }
+            logger.debug("Hedging request {}", url);
+            send(true);
+        }
+
+        private void succeeded(Attempt attempt, List<Person> persons, long rttNanos) {
+            outstanding.decrementAndGet();
+            if(!future.complete(persons)) {
+                return;
+            }
+            if(hedging != null) {
+                hedging.recordResponse(rttNanos);
+                if(attempt.hedged) {
+                    hedging.onHedgeWon();
+                }
+                var timeout = hedgeTimeout;
+                if(timeout != null) {
+                    timeout.cancel();
+                }
+                var other = attempt.hedged ? primary : hedge;
+                if(other != null) {
+                    // the loser's response time is cut off, so it must not become a latency sample
+                    other.abort();
+                }
+            }
+        }
+
+        private void abort() {
+            var timeout = hedgeTimeout;
+            if(timeout != null) {
+                timeout.cancel();
+            }
+            var attempt = primary;
+            if(attempt != null) {
+                attempt.abort();
+            }
+            attempt = hedge;
+            if(attempt != null) {
+                attempt.abort();
+            }
+        }
+
+        private void failed(Throwable t) {
+            // wait for the other attempt, which may still succeed
+            if(outstanding.decrementAndGet() == 0) {
+                future.completeExceptionally(t);
+            }
+        }
+    }
+
+    private class Attempt extends AsyncCompletionHandler<List<Person>> {
+        private final Exchange exchange;
+        private final boolean hedged;
+        private final long startTime = System.nanoTime();
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private volatile ListenableFuture<List<Person>> responseFuture;
+
+        private Attempt(Exchange exchange, boolean hedged) {
+            this.exchange = exchange;
+            this.hedged = hedged;
+        }
+
+        @Override
+        public List<Person> onCompleted(Response response) {
+            long rtt = System.nanoTime() - startTime;
+            boolean success = response.getStatusCode() / 100 == 2;
+            if(!finish(rtt, success)) {
+                return null;
+            }
+            try {
+                var persons = getPersons(response);
+                exchange.succeeded(this, persons, rtt);
+                return persons;
+            } catch (Exception e) {
+                metrics.onRequestError();
+                exchange.failed(e);
+                return null;
+            }
+        }
+
+        @Override
+        public void onThrowable(Throwable t) {
+            if(finish(System.nanoTime() - startTime, false)) {
+                if(t instanceof TimeoutException) {
+                    metrics.onRequestTimeout();
+                } else {
+                    metrics.onRequestError();
+                }
+                if(RequestDeadlines.isExpired(exchange.deadlineNanos)) {
+                    deadlines.onAbortedAtDeadline();
+                }
+                exchange.failed(t);
+            }
+        }
+
+        /**
+         * Aborts the request because nobody waits for its response anymore, or because the other attempt has won.
+         * Neither a response time nor a result is recorded, since the request was interrupted.
+         */
+        private void abort() {
+            if(finished.compareAndSet(false, true)) {
+                metrics.onRequestFinished();
+                if(!hedged) {
+                    scheduler.onRequestSkipped();
+                }
+                if(breaker != null) {
+                    breaker.release();
+                }
+                exchange.outstanding.decrementAndGet();
+            }
+            var f = responseFuture;
+            if(f != null) {
+                f.cancel(true);
+            }
+        }
+
+        private boolean finish(long rttNanos, boolean success) {
+            if(!finished.compareAndSet(false, true)) {
+                return false;
+            }
+            metrics.record(WorkflowMetrics.Phase.HTTP, rttNanos);
+            metrics.onRequestFinished();
+            if(!hedged) {
+                scheduler.onRequestCompleted(rttNanos, !success);
+            }
+            if(breaker != null) {
+                breaker.onResult(success);
+            }
+            return true;
+        }
+    }
+
+    public RecruitingClient(String serviceUrl, RateLimitingScheduler scheduler) {
+        this(serviceUrl, scheduler, new WorkflowMetrics());
+    }
+
+    public RecruitingClient(String serviceUrl, RateLimitingScheduler scheduler, WorkflowMetrics metrics) {
+        this(serviceUrl, scheduler, metrics, DEFAULT_REQUEST_TIMEOUT_MILLIS, null, null, null, new RequestDeadlines());
+    }
+
+    /**
+     * @param requestTimeoutMillis the timeout of requests without a deadline, and the maximum timeout of the others
+     * @param wheel the timer used to send the hedged requests; may be null if {@code hedging} is null
+     * @param hedging the policy for sending duplicates of slow requests; may be null
+     * @param breaker the circuit breaker of the recruiting service; may be null
+     * @param deadlines counts the requests dropped or aborted because of their deadline
+     */
+    public RecruitingClient(String serviceUrl, RateLimitingScheduler scheduler, WorkflowMetrics metrics, int requestTimeoutMillis,
+                            TimingWheel wheel, HedgingPolicy hedging, CircuitBreaker breaker, RequestDeadlines deadlines) {
+        this.serviceUrl = serviceUrl;
+        this.scheduler = scheduler;
+        this.metrics = metrics;
+        this.client = asyncHttpClient(config().setRequestTimeout(requestTimeoutMillis));
+        this.wheel = wheel;
+        this.hedging = hedging;
+        this.breaker = breaker;
+        this.deadlines = deadlines;
+        this.requestTimeoutMillis = requestTimeoutMillis;
+    }
+
+    /**
+     * Requests {@code amount} persons satisfying the given constraints.
+     * The service may return fewer persons than requested.
+     */
+    public CompletableFuture<List<Person>> fetch(PersonKey key, int amount) {
+        return fetch(key, amount, RequestDeadlines.NO_DEADLINE);
+    }
+
+    /**
+     * @param deadlineNanos the {@link System#nanoTime()} after which the response is no longer needed, or {@link RequestDeadlines#NO_DEADLINE}
+     */
+    public CompletableFuture<List<Person>> fetch(PersonKey key, int amount, long deadlineNanos) {
+        var exchange = new Exchange(buildUrl(serviceUrl, key, amount), deadlineNanos);
+        if(breaker != null && !breaker.tryAcquire()) {
+            exchange.future.completeExceptionally(new RejectedExecutionException("Circuit breaker open for " + breaker.getEndpoint()));
+            return exchange.future;
+        }
+        long queuedAt = System.nanoTime();
+        boolean scheduled = scheduler.schedule(() -> {
+                metrics.record(WorkflowMetrics.Phase.SCHEDULER_QUEUEING, System.nanoTime() - queuedAt);
+                if(exchange.future.isCancelled()) {
+                    scheduler.onRequestSkipped();
+                    if(breaker != null) {
+                        breaker.release();
+                    }
+                    return;
+                }
+                if(RequestDeadlines.isExpired(deadlineNanos)) {
+                    // nobody waits for the response anymore: do not send the request
+                    deadlines.onExpiredBeforeSend();
+                    scheduler.onRequestSkipped();
+                    if(breaker != null) {
+                        breaker.release();
+                    }
+                    exchange.future.completeExceptionally(new RequestDeadlines.ExpiredException());
+                    return;
+                }
+                exchange.send(false);
+                if(hedging != null) {
+                    exchange.scheduleHedge();
+                }
+            }
+        );
+        if(!scheduled) {
+            if(breaker != null) {
+                breaker.release();
+            }
+            exchange.future.completeExceptionally(new RejectedExecutionException("Too many pending requests."));
+        }
+        return exchange.future;
+    }
+
+    public int getRequestTimeoutMillis() {
+        return requestTimeoutMillis;
+    }
+
+    /**
+     * Changes the timeout of the requests sent from now on.
+     */
+    public void setRequestTimeoutMillis(int requestTimeoutMillis) {
+        this.requestTimeoutMillis = requestTimeoutMillis;
+    }
+
+    public RequestDeadlines getDeadlines() {
+        return deadlines;
+    }
+
+    /**
+     * Closes the HTTP client and its event loop threads; requests still in flight fail.
+     */
+    public void shutdown() {
+        try {
+            client.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close the HTTP client.", e);
+        }
+    }
+
+    static String buildUrl(String serviceUrl, PersonKey key, int amount) {
+        var url = new StringBuilder(serviceUrl).append('?');
+        if(key.getFemale() != null) {
+            url.append("gender=").append(key.getFemale() ? "female" : "male").append('&');
+        }
+        if(key.getRegion() != null) {
+            url.append("region=").append(URLEncoder.encode(key.getRegion(), StandardCharsets.UTF_8)).append('&');
+        }
+        if(amount > 1) {
+            url.append("amount=").append(amount).append('&');
+        }
+        url.setLength(url.length() - 1);
+        return url.toString();
+    }
+
+    private List<Person> getPersons(Response response) throws Exception {
+        if(response.getStatusCode() / 100 != 2) {
+            throw new Exception("HTTP-" + response.getStatusCode() + ": " + response.getStatusText());
+        }
+        long start = System.nanoTime();
+        var persons = PersonDecoder.decodeList(response.getResponseBodyAsStream());
+        metrics.record(WorkflowMetrics.Phase.DECODE, System.nanoTime() - start);
+        return persons;
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An in-process stand-in for the recruiting service, which speaks the same query API as uinames.com
+ * ({@code gender}, {@code region}, {@code amount}) and returns generated persons.
+ * Latency, error rate, dropped connections and the number of concurrently served requests are configurable,
+ * which allows load-testing the engine without depending on an external service.
+ */
+public class RecruitingStubServer {
+    private static final Logger logger = LoggerFactory.getLogger(RecruitingStubServer.class);
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    private static final String[] REGIONS = {"Australia", "Brazil", "Canada", "England", "France", "Germany",
+            "India", "Italy", "Japan", "Mexico", "Norway", "Romania", "Spain", "Sweden", "United States"};
+    private static final String[] FEMALE_NAMES = {"Anna", "Chloe", "Elena", "Emma", "Hana", "Ioana", "Julia",
+            "Laura", "Maria", "Nora", "Olivia", "Sofia"};
+    private static final String[] MALE_NAMES = {"Adrian", "Carlos", "David", "Erik", "Hiroshi", "Jack", "Lucas",
+            "Luca", "Mateo", "Noah", "Pierre", "Tom"};
+    private static final String[] SURNAMES = {"Andersson", "Brown", "Costa", "Dubois", "Garcia", "Hansen",
+            "Ionescu", "Kumar", "Martin", "Meyer", "Rossi", "Sato", "Smith", "Tremblay"};
+
+    public enum LatencyDistribution {NONE, FIXED, UNIFORM, EXPONENTIAL}
+
+    private final LatencyDistribution latencyDistribution;
+    private final long latencyMillis;
+    private final double errorRate;
+    private final double dropRate;
+    private final int maxConcurrency;
+    private final AtomicInteger activeRequests = new AtomicInteger();
+
+    private final HttpServer server;
+    private final ExecutorService handlerExecutor = Executors.newFixedThreadPool(4);
+    private final ScheduledExecutorService delayExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    /**
+     * @param latencyMillis the fixed latency, the mean latency (EXPONENTIAL) or the half-width of the range [0, 2*latencyMillis] (UNIFORM)
+     * @param maxConcurrency the maximum number of requests served concurrently; additional requests get a 503 response. 0 means unlimited.
+     */
+    public RecruitingStubServer(int port, LatencyDistribution latencyDistribution, long latencyMillis,
+                                double errorRate, double dropRate, int maxConcurrency) throws IOException {
+        this.latencyDistribution = latencyDistribution;
+        this.latencyMillis = latencyMillis;
+        this.errorRate = errorRate;
+        this.dropRate = dropRate;
+        this.maxConcurrency = maxConcurrency;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        server.createContext("/api/", this::handle);
+        server.setExecutor(handlerExecutor);
+    }
+
+    public static RecruitingStubServer create(AppConfig config) throws IOException {
+        return new RecruitingStubServer(config.stubServerPort(), config.stubLatencyDistribution(), config.stubLatencyMillis(),
+                config.stubErrorRate(), config.stubDropRate(), config.stubMaxConcurrency());
+    }
+
+    public void start() {
+        server.start();
+        logger.info("Recruiting stub server listening on {}", getUrl());
+    }
+
+    public void stop() {
+        server.stop(0);
+        delayExecutor.shutdownNow();
+        handlerExecutor.shutdownNow();
+    }
+
+    public String getUrl() {
+        var address = server.getAddress();
+        return "http://" + address.getHostString() + ":" + address.getPort() + "/api/";
+    }
+
+    private void handle(HttpExchange exchange) {
+        int active = activeRequests.incrementAndGet();
+        if(maxConcurrency > 0 && active > maxConcurrency) {
+            respond(exchange, 503, "Too many requests");
+            return;
+        }
+        long delay = nextLatency();
+        if(delay > 0) {
+            delayExecutor.schedule(() -> complete(exchange), delay, TimeUnit.MILLISECONDS);
+        } else {
+            complete(exchange);
+        }
+    }
+
+    private void complete(HttpExchange exchange) {
+        var rnd = ThreadLocalRandom.current();
+        if(dropRate > 0 && rnd.nextDouble() < dropRate) {
+            activeRequests.decrementAndGet();
+            exchange.close();
+            return;
+        }
+        if(errorRate > 0 && rnd.nextDouble() < errorRate) {
+            respond(exchange, 500, "Internal server error");
+            return;
+        }
+        try {
+            var params = parseQuery(exchange.getRequestURI().getRawQuery());
+            int amount = Math.max(1, Math.min(500, Integer.parseInt(params.getOrDefault("amount", "1"))));
+            var out = new ByteArrayOutputStream(128 * amount);
+            try(JsonGenerator generator = jsonFactory.createGenerator(out)) {
+                if(amount > 1) {
+                    generator.writeStartArray();
+                }
+                for(int i = 0; i < amount; i++) {
+                    writePerson(generator, params.get("gender"), params.get("region"));
+                }
+                if(amount > 1) {
+                    generator.writeEndArray();
+                }
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            send(exchange, 200, out.toByteArray());
+        } catch (RuntimeException | IOException e) {
+            respond(exchange, 400, String.valueOf(e.getMessage()));
+        }
+    }
+
+    private void respond(HttpExchange exchange, int status, String message) {
+        send(exchange, status, ("{\"error\":\"" + message + "\"}").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void send(HttpExchange exchange, int status, byte[] body) {
+        activeRequests.decrementAndGet();
+        try {
+            exchange.sendResponseHeaders(status, body.length);
+            try(OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        } catch (IOException e) {
+            logger.debug("Failed to send response: {}", e.toString());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void writePerson(JsonGenerator generator, String gender, String region) throws IOException {
+        var rnd = ThreadLocalRandom.current();
+        boolean female = (gender == null) ? rnd.nextBoolean() : "female".equals(gender);
+        String[] names = female ? FEMALE_NAMES : MALE_NAMES;
+        generator.writeStartObject();
+        generator.writeStringField("name", names[rnd.nextInt(names.length)]);
+        generator.writeStringField("surname", SURNAMES[rnd.nextInt(SURNAMES.length)]);
+        generator.writeStringField("gender", female ? "female" : "male");
+        generator.writeStringField("region", (region == null) ? REGIONS[rnd.nextInt(REGIONS.length)] : region);
+        generator.writeEndObject();
+    }
+
+    private long nextLatency() {
+        var rnd = ThreadLocalRandom.current();
+        switch(latencyDistribution) {
+            case FIXED: return latencyMillis;
+            case UNIFORM: return rnd.nextLong(2 * latencyMillis + 1);
+            case EXPONENTIAL: return Math.round(-latencyMillis * Math.log(1 - rnd.nextDouble()));
+            default: return 0;
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        var params = new HashMap<String, String>();
+        if(query != null) {
+            for(String param : query.split("&")) {
+                int pos = param.indexOf('=');
+                if(pos > 0) {
+                    params.put(param.substring(0, pos), URLDecoder.decode(param.substring(pos + 1), StandardCharsets.UTF_8));
+                }
+            }
+        }
+        return params;
+    }
+}
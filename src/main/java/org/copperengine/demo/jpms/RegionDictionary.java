@@ -0,0 +1,66 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns a dense {@code char} code to each region name, so that a {@link Person} stores two bytes
+ * instead of a reference to its own copy of the name. The codes are only valid within the running JVM.
+ */
+final class RegionDictionary {
+    private static final Map<String, Character> codes = new ConcurrentHashMap<>();
+    private static volatile String[] regions = new String[64];
+    private static int regionCount;
+
+    private RegionDictionary() {
+    }
+
+    static char codeOf(String region) {
+        Character code = codes.get(region);
+        return (code != null) ? code : register(region);
+    }
+
+    static String regionOf(char code) {
+        return regions[code];
+    }
+
+    static int size() {
+        return codes.size();
+    }
+
+    private static synchronized char register(String region) {
+        Character code = codes.get(region);
+        if(code != null) {
+            return code;
+        }
+        if(regionCount > Character.MAX_VALUE) {
+            throw new IllegalStateException("More than " + (Character.MAX_VALUE + 1) + " distinct regions.");
+        }
+        String[] current = regions;
+        if(regionCount == current.length) {
+            current = Arrays.copyOf(current, Math.min(2 * current.length, Character.MAX_VALUE + 1));
+        }
+        current[regionCount] = region;
+        // publish the array before the code, so that regionOf() finds the name of any code obtained from codeOf()
+        regions = current;
+        code = (char) regionCount++;
+        codes.put(region, code);
+        return code;
+    }
+}
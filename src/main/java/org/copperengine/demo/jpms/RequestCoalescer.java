@@ -0,0 +1,206 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects concurrent requests for the same {@link PersonKey} and sends them as a single bulk request ({@code amount=N}).
+ * A batch is sent when it reaches {@code maxBatchSize} requests or when its window has elapsed.
+ * If the service returns fewer persons than requested, only the requests that are not covered fail.
+ * The bulk request is bounded by the earliest deadline of the requests it covers. If that deadline passes before the request is sent,
+ * only the expired requests fail; the others are sent again as a new bulk request.
+ */
+public class RequestCoalescer {
+    private static final Logger logger = LoggerFactory.getLogger(RequestCoalescer.class);
+    private static final int MAX_AMOUNT = 500;
+
+    private final RecruitingClient client;
+    private final TimingWheel wheel;
+    private final long windowMillis;
+    private final int maxBatchSize;
+    private final Map<PersonKey, Batch> batches = new ConcurrentHashMap<>();
+
+    private final LongAdder requestCount = new LongAdder();
+    private final LongAdder batchCount = new LongAdder();
+
+    private static class Member {
+        private final CompletableFuture<Person> future;
+        private final long deadlineNanos;
+
+        private Member(CompletableFuture<Person> future, long deadlineNanos) {
+            this.future = future;
+            this.deadlineNanos = deadlineNanos;
+        }
+    }
+
+    private class Batch {
+        private final PersonKey key;
+        private final List<Member> members = new ArrayList<>();
+        private long deadlineNanos = RequestDeadlines.NO_DEADLINE;
+        private boolean closed;
+
+        private Batch(PersonKey key) {
+            this.key = key;
+        }
+
+        private void onWindowElapsed() {
+            synchronized(this) {
+                if(closed) {
+                    return;
+                }
+                close();
+            }
+            send(this);
+        }
+
+        // must be called while holding the lock on this batch
+        private void add(Member member) {
+            members.add(member);
+            long deadline = member.deadlineNanos;
+            if(deadline != RequestDeadlines.NO_DEADLINE
+                    && (deadlineNanos == RequestDeadlines.NO_DEADLINE || deadline - deadlineNanos < 0)) {
+                deadlineNanos = deadline;
+            }
+        }
+
+        // must be called while holding the lock on this batch
+        private void close() {
+            closed = true;
+            batches.remove(key, this);
+        }
+    }
+
+    public RequestCoalescer(RecruitingClient client, TimingWheel wheel, long windowMillis, int maxBatchSize) {
+        this.client = client;
+        this.wheel = wheel;
+        this.windowMillis = windowMillis;
+        this.maxBatchSize = Math.min(maxBatchSize, MAX_AMOUNT);
+    }
+
+    /**
+     * @param deadlineNanos the {@link System#nanoTime()} after which the person is no longer needed, or {@link RequestDeadlines#NO_DEADLINE}
+     */
+    public CompletableFuture<Person> request(PersonKey key, long deadlineNanos) {
+        requestCount.increment();
+        var member = new Member(new CompletableFuture<>(), deadlineNanos);
+        while(true) {
+            Batch batch = batchFor(key);
+            boolean full;
+            synchronized(batch) {
+                if(batch.closed) {
+                    continue;
+                }
+                batch.add(member);
+                full = batch.members.size() >= maxBatchSize;
+                if(full) {
+                    batch.close();
+                }
+            }
+            if(full) {
+                send(batch);
+            }
+            return member.future;
+        }
+    }
+
+    private Batch batchFor(PersonKey key) {
+        Batch batch = batches.get(key);
+        if(batch != null) {
+            return batch;
+        }
+        var created = new Batch(key);
+        batch = batches.putIfAbsent(key, created);
+        if(batch != null) {
+            return batch;
+        }
+        // a batch that is full before its window elapses is already closed then
+        wheel.schedule(created::onWindowElapsed, windowMillis, TimeUnit.MILLISECONDS);
+        return created;
+    }
+
+    public long getRequestCount() {
+        return requestCount.sum();
+    }
+
+    public long getBatchCount() {
+        return batchCount.sum();
+    }
+
+    private void send(Batch batch) {
+        batchCount.increment();
+        var members = batch.members;
+        logger.trace("Sending bulk request for {} persons: {}", members.size(), batch.key);
+        client.fetch(batch.key, members.size(), batch.deadlineNanos).whenComplete((persons, exc) -> {
+            if(isExpiredBeforeSend(exc)) {
+                resendLive(batch, exc);
+                return;
+            }
+            int covered = (exc == null) ? Math.min(persons.size(), members.size()) : 0;
+            for(int i = 0; i < covered; i++) {
+                members.get(i).future.complete(persons.get(i));
+            }
+            if(covered < members.size()) {
+                Throwable failure = (exc != null) ? exc
+                        : new Exception("Partial response: received " + covered + " of " + members.size() + " persons");
+                for(int i = covered; i < members.size(); i++) {
+                    members.get(i).future.completeExceptionally(failure);
+                }
+            }
+        });
+    }
+
+    private static boolean isExpiredBeforeSend(Throwable exc) {
+        if(exc instanceof CompletionException) {
+            exc = exc.getCause();
+        }
+        return exc instanceof RequestDeadlines.ExpiredException;
+    }
+
+    /**
+     * Fails the members whose own deadline has passed and sends the others in a new bulk request.
+     */
+    private void resendLive(Batch expired, Throwable exc) {
+        // the new batch is not shared, so it is built without holding its lock
+        var live = new Batch(expired.key);
+        live.closed = true;
+        for(Member member : expired.members) {
+            if(member.future.isDone()) {
+                // cancelled by its workflow
+                continue;
+            }
+            if(RequestDeadlines.isExpired(member.deadlineNanos)) {
+                member.future.completeExceptionally(exc);
+            } else {
+                live.add(member);
+            }
+        }
+        if(!live.members.isEmpty()) {
+            logger.trace("Resending {} requests with a later deadline: {}", live.members.size(), live.key);
+            send(live);
+        }
+    }
+}
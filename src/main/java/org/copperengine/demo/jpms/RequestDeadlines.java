@@ -0,0 +1,169 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tracks the recruiting requests whose workflow is still waiting, together with the deadline of the wait.
+ * A response is only delivered to the engine if its correlation ID is live and its deadline has not passed;
+ * otherwise it is discarded without a call to {@code engine.notify}.
+ * Deadlines are {@link System#nanoTime()} values; {@link #NO_DEADLINE} means that the request never expires.
+ * A workflow that goes ahead without a response can {@link #cancel(String) cancel} the request,
+ * which also cancels the future {@link #attach(String, Future) attached} to it.
+ */
+public class RequestDeadlines implements RequestDeadlinesMXBean {
+    public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private final Map<String, LiveRequest> live = new ConcurrentHashMap<>();
+    private final LongAdder expiredBeforeSendCount = new LongAdder();
+    private final LongAdder abortedAtDeadlineCount = new LongAdder();
+    private final LongAdder lateResponseCount = new LongAdder();
+    private final LongAdder cancelledCount = new LongAdder();
+
+    private static class LiveRequest {
+        private final long deadlineNanos;
+        private volatile Future<?> request;
+
+        private LiveRequest(long deadlineNanos) {
+            this.deadlineNanos = deadlineNanos;
+        }
+    }
+
+    /**
+     * Signals that a request was not sent because its deadline had already passed.
+     */
+    public static class ExpiredException extends TimeoutException {
+        private static final long serialVersionUID = 1L;
+
+        public ExpiredException() {
+            super("Deadline passed before the request was sent.");
+        }
+    }
+
+    public static long deadlineAfter(long timeoutMillis) {
+        return System.nanoTime() + timeoutMillis * 1_000_000;
+    }
+
+    public static boolean isExpired(long deadlineNanos) {
+        return deadlineNanos != NO_DEADLINE && System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    /**
+     * @return the time left until the deadline, but at most {@code maxMillis}; 0 if the deadline has passed
+     */
+    public static long remainingMillis(long deadlineNanos, long maxMillis) {
+        if(deadlineNanos == NO_DEADLINE) {
+            return maxMillis;
+        }
+        return Math.max(0, Math.min(maxMillis, (deadlineNanos - System.nanoTime()) / 1_000_000));
+    }
+
+    public void register(String correlationId, long deadlineNanos) {
+        live.put(correlationId, new LiveRequest(deadlineNanos));
+    }
+
+    /**
+     * Attaches the pending operation of a registered request, so that it can be cancelled.
+     * If the request has been cancelled in the meantime, the operation is cancelled right away.
+     */
+    public void attach(String correlationId, Future<?> request) {
+        var liveRequest = live.get(correlationId);
+        if(liveRequest == null) {
+            // completed (then cancel has no effect) or cancelled
+            request.cancel(true);
+            return;
+        }
+        liveRequest.request = request;
+        if(live.get(correlationId) != liveRequest) {
+            request.cancel(true);
+        }
+    }
+
+    /**
+     * Ends the tracking of a request whose response is no longer needed and cancels its pending operation.
+     * @return false if the request was not live (completed, expired or served without a request)
+     */
+    public boolean cancel(String correlationId) {
+        var liveRequest = live.remove(correlationId);
+        if(liveRequest == null) {
+            return false;
+        }
+        cancelledCount.increment();
+        var request = liveRequest.request;
+        if(request != null) {
+            request.cancel(true);
+        }
+        return true;
+    }
+
+    /**
+     * Ends the tracking of the request.
+     * @return true if the response should be delivered, false if it is late and has been counted as such
+     */
+    public boolean complete(String correlationId) {
+        var liveRequest = live.remove(correlationId);
+        if(liveRequest == null || isExpired(liveRequest.deadlineNanos)) {
+            lateResponseCount.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Ends the tracking of a request without a response, e.g. because it has not been sent.
+     */
+    public void abandon(String correlationId) {
+        live.remove(correlationId);
+    }
+
+    public void onExpiredBeforeSend() {
+        expiredBeforeSendCount.increment();
+    }
+
+    public void onAbortedAtDeadline() {
+        abortedAtDeadlineCount.increment();
+    }
+
+    @Override
+    public int getLiveRequestCount() {
+        return live.size();
+    }
+
+    @Override
+    public long getExpiredBeforeSendCount() {
+        return expiredBeforeSendCount.sum();
+    }
+
+    @Override
+    public long getAbortedAtDeadlineCount() {
+        return abortedAtDeadlineCount.sum();
+    }
+
+    @Override
+    public long getLateResponseCount() {
+        return lateResponseCount.sum();
+    }
+
+    @Override
+    public long getCancelledCount() {
+        return cancelledCount.sum();
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import org.copperengine.core.Acknowledge;
+import org.copperengine.core.ProcessingEngine;
+import org.copperengine.core.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Delivers responses to the processing engine from a dedicated thread, so that the HTTP event loops never wait for the engine.
+ * Responses are collected in a bounded queue and drained in batches.
+ * If the queue is full, the calling thread waits for the dispatcher instead of notifying the engine itself.
+ * The engine is notified with a non-blocking acknowledge; failures are only logged.
+ */
+public class ResponseDispatcher {
+    private static final Logger logger = LoggerFactory.getLogger(ResponseDispatcher.class);
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long BACKPRESSURE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final MpscArrayQueue<Delivery> queue;
+    private final int maxBatchSize;
+    private final Thread dispatcherThread;
+    private final AtomicLong overflowCount = new AtomicLong();
+    private volatile boolean sleeping;
+    private volatile boolean running = true;
+
+    /**
+     * Logs a failed delivery instead of having the notifying thread wait for the acknowledge.
+     */
+    static final Acknowledge NON_BLOCKING_ACK = new Acknowledge() {
+        @Override
+        public void onSuccess() {
+        }
+
+        @Override
+        public void onException(Throwable t) {
+            logger.warn("Failed to deliver response.", t);
+        }
+    };
+
+    private static class Delivery {
+        private final ProcessingEngine engine;
+        private final Response<?> response;
+
+        private Delivery(ProcessingEngine engine, Response<?> response) {
+            this.engine = engine;
+            this.response = response;
+        }
+    }
+
+    public ResponseDispatcher(int capacity, int maxBatchSize) {
+        this.queue = new MpscArrayQueue<>(capacity);
+        this.maxBatchSize = maxBatchSize;
+        this.dispatcherThread = new Thread(this::work, "team-creation-response-dispatcher");
+        dispatcherThread.setDaemon(true);
+        dispatcherThread.start();
+    }
+
+    /**
+     * Hands over the response for asynchronous delivery.
+     * If the queue is full, the calling thread is held back until the dispatcher has made room,
+     * so that the HTTP event loops slow down instead of notifying the engine themselves.
+     * After {@link #shutdown()}, the response is delivered from the calling thread.
+     */
+    public void dispatch(ProcessingEngine engine, Response<?> response) {
+        var delivery = new Delivery(engine, response);
+        if(!queue.offer(delivery)) {
+            overflowCount.incrementAndGet();
+            logger.debug("Response queue full. Waiting to dispatch {}.", response.getCorrelationId());
+            do {
+                if(!running) {
+                    deliver(engine, response);
+                    return;
+                }
+                LockSupport.unpark(dispatcherThread);
+                LockSupport.parkNanos(this, BACKPRESSURE_PARK_NANOS);
+            } while(!queue.offer(delivery));
+        }
+        if(!running) {
+            // the dispatcher may have terminated before it saw this response
+            deliverAfterShutdown();
+        } else if(sleeping) {
+            LockSupport.unpark(dispatcherThread);
+        }
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public long getOverflowCount() {
+        return overflowCount.get();
+    }
+
+    /**
+     * Delivers the responses still queued and waits until the dispatcher thread has terminated.
+     * The engines must still be running.
+     */
+    public void shutdown() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(dispatcherThread);
+        dispatcherThread.join();
+    }
+
+    private void work() {
+        while(running || queue.size() > 0) {
+            int count = queue.drain(d -> deliver(d.engine, d.response), maxBatchSize);
+            if(count == 0) {
+                sleeping = true;
+                if(queue.size() == 0 && running) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                sleeping = false;
+            }
+        }
+    }
+
+    private synchronized void deliverAfterShutdown() {
+        try {
+            dispatcherThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        queue.drain(d -> deliver(d.engine, d.response), Integer.MAX_VALUE);
+    }
+
+    private static void deliver(ProcessingEngine engine, Response<?> response) {
+        if(response instanceof TimedResponse) {
+            ((TimedResponse<?>) response).markNotified();
+        }
+        try {
+            engine.notify(response, NON_BLOCKING_ACK);
+        } catch (RuntimeException e) {
+            logger.warn("Failed to notify engine about {}", response.getCorrelationId(), e);
+        }
+    }
+}
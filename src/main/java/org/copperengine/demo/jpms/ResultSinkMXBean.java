@@ -0,0 +1,30 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+public interface ResultSinkMXBean {
+    long getPublishedCount();
+    long getDroppedCount();
+    long getWrittenCount();
+    long getFailedCount();
+    long getFlushCount();
+    long getBytesWritten();
+    int getQueueSize();
+    int getQueueCapacity();
+    /** the results written per second during the last measurement interval (about one second) */
+    double getWriteRate();
+    long getLastFlushMicros();
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * The output of a {@link BatchingResultSink}. The methods are only called from the writer thread of the sink.
+ */
+public interface ResultWriter extends Closeable {
+    void write(String workflowId, Team team) throws IOException;
+
+    /**
+     * Makes the results written so far visible (and durable, if the writer supports it).
+     */
+    void flush() throws IOException;
+
+    default long getBytesWritten() {
+        return 0;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import org.copperengine.core.ProcessingEngine;
+
+/**
+ * A {@link TeamCreationAdapter} that serves the workflows of several engine shards.
+ * Each shard injects its own view ({@link #forShard(int)}) into its workflows,
+ * so that the responses are delivered to the engine of the requesting workflow.
+ * Used directly, the adapter serves shard 0.
+ */
+public interface ShardedTeamCreationAdapter extends TeamCreationAdapter {
+    void setEngine(int shard, ProcessingEngine engine);
+
+    /**
+     * Triggers the creation of a person; the response is delivered to the engine of the shard encoded in the correlation ID.
+     * @param deadlineNanos the {@link System#nanoTime()} after which the workflow no longer waits for the response
+     */
+    void asyncCreatePerson(String correlationId, PersonKey key, long deadlineNanos);
+
+    default String asyncCreatePerson(int shard, PersonKey key, long timeoutMillis) {
+        String correlationId = EngineRouter.createCorrelationId(shard);
+        asyncCreatePerson(correlationId, key, RequestDeadlines.deadlineAfter(timeoutMillis));
+        return correlationId;
+    }
+
+    default long asyncCreatePersons(int shard, PersonKey key, int count, long timeoutMillis) {
+        long first = EngineRouter.nextRequestNumbers(count);
+        long deadline = RequestDeadlines.deadlineAfter(timeoutMillis);
+        for(int i = 0; i < count; i++) {
+            asyncCreatePerson(EngineRouter.correlationId(first + i, shard), key, deadline);
+        }
+        return first;
+    }
+
+    default void setEngine(ProcessingEngine engine) {
+        setEngine(0, engine);
+    }
+
+    @Override
+    default String asyncCreateLeader(boolean female, long timeoutMillis) {
+        return asyncCreatePerson(0, PersonKey.ofGender(female), timeoutMillis);
+    }
+
+    @Override
+    default String asyncCreateTeamMember(Person leader, long timeoutMillis) {
+        return asyncCreatePerson(0, PersonKey.ofRegion(leader.getLocation()), timeoutMillis);
+    }
+
+    @Override
+    default long asyncCreateTeamMembers(Person leader, int count, long timeoutMillis) {
+        return asyncCreatePersons(0, PersonKey.ofRegion(leader.getLocation()), count, timeoutMillis);
+    }
+
+    @Override
+    default String correlationId(long requestNumber) {
+        return EngineRouter.correlationId(requestNumber, 0);
+    }
+
+    /**
+     * Creates the view of a shard; the shard injectors create one per shard, not one per request.
+     */
+    default TeamCreationAdapter forShard(int shard) {
+        return new TeamCreationAdapter() {
+            @Override
+            public String asyncCreateLeader(boolean female, long timeoutMillis) {
+                return asyncCreatePerson(shard, PersonKey.ofGender(female), timeoutMillis);
+            }
+
+            @Override
+            public String asyncCreateTeamMember(Person leader, long timeoutMillis) {
+                return asyncCreatePerson(shard, PersonKey.ofRegion(leader.getLocation()), timeoutMillis);
+            }
+
+            @Override
+            public long asyncCreateTeamMembers(Person leader, int count, long timeoutMillis) {
+                return asyncCreatePersons(shard, PersonKey.ofRegion(leader.getLocation()), count, timeoutMillis);
+            }
+
+            @Override
+            public String correlationId(long requestNumber) {
+                return EngineRouter.correlationId(requestNumber, shard);
+            }
+
+            @Override
+            public void cancel(String correlationId) {
+                ShardedTeamCreationAdapter.this.cancel(correlationId);
+            }
+        };
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * A created team: the leader and an exactly sized array of members.
+ */
+public final class Team implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final Person leader;
+    private final Person[] members;
+
+    /**
+     * @param members the first {@code memberCount} elements are the members of the team
+     */
+    public Team(Person leader, Person[] members, int memberCount) {
+        this.leader = leader;
+        this.members = Arrays.copyOf(members, memberCount);
+    }
+
+    public Person getLeader() {
+        return leader;
+    }
+
+    public List<Person> getMembers() {
+        return List.of(members);
+    }
+
+    public int getMemberCount() {
+        return members.length;
+    }
+
+    @Override
+    public String toString() {
+        return "Team of " + leader.getFullName() + " from " + leader.getLocation() + ": "
+                + Arrays.stream(members).map(Person::getFullName).collect(Collectors.joining(", "));
+    }
+}
@@ -15,7 +15,30 @@
  */
 package org.copperengine.demo.jpms;
 
+/**
+ * Triggers the recruiting requests of the workflows.
+ * The {@code timeoutMillis} of a request is the time the workflow waits for the response;
+ * afterwards, the request is dropped or aborted and a late response is discarded.
+ */
 public interface TeamCreationAdapter {
-    String asyncCreateLeader(boolean female);
-    String asyncCreateTeamMember(Person leader);
+    String asyncCreateLeader(boolean female, long timeoutMillis);
+    String asyncCreateTeamMember(Person leader, long timeoutMillis);
+
+    /**
+     * Triggers the creation of {@code count} team members with consecutive request numbers,
+     * so that a waiting workflow only needs to keep the first number instead of an array of correlation IDs.
+     * @return the request number of the first member; see {@link #correlationId(long)}
+     */
+    long asyncCreateTeamMembers(Person leader, int count, long timeoutMillis);
+
+    /**
+     * @return the correlation ID of the request with the given number
+     */
+    String correlationId(long requestNumber);
+
+    /**
+     * Tells the adapter that the workflow no longer waits for the response with the given correlation ID.
+     * The request is aborted if possible; otherwise, its response is discarded.
+     */
+    void cancel(String correlationId);
 }
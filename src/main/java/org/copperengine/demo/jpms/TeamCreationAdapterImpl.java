@@ -15,113 +15,112 @@
  */
 package org.copperengine.demo.jpms;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import org.asynchttpclient.AsyncCompletionHandler;
-import org.asynchttpclient.AsyncHttpClient;
-import org.asynchttpclient.Response;
-import org.copperengine.core.Acknowledge;
 import org.copperengine.core.ProcessingEngine;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
 
-import static org.asynchttpclient.Dsl.asyncHttpClient;
-import static org.asynchttpclient.Dsl.config;
-
-public class TeamCreationAdapterImpl implements TeamCreationAdapter {
+public class TeamCreationAdapterImpl implements ShardedTeamCreationAdapter {
     private static final Logger logger = LoggerFactory.getLogger(TeamCreationAdapterImpl.class);
-    private static final AtomicLong correlationIdCounter = new AtomicLong();
-
-    private final long delayMillis;
-    private long lastScheduledStart;
-    private ScheduledExecutorService svc = Executors.newScheduledThreadPool(1000);
-
-    private final AsyncHttpClient client = asyncHttpClient(config());
-    private ProcessingEngine engine;
-
-    private class PersonHandler extends AsyncCompletionHandler<Person> {
-        private final String correlationId;
-
-        private PersonHandler(String correlationId) {
-            this.correlationId = correlationId;
-        }
+    public static final String DEFAULT_SERVICE_URL = "http://uinames.com/api/";
 
-        @Override
-        public Person onCompleted(Response response) {
-            Person person = null;
-            Exception exc = null;
-            try {
-                person = getPerson(response);
-            } catch (Exception e) {
-                exc = e;
-            }
-            var copperResp = new org.copperengine.core.Response<>(correlationId, person, exc);
-            var ack = new Acknowledge.DefaultAcknowledge();
-            logger.debug("notifying: {}", person);
-            engine.notify(copperResp, ack);
-            ack.waitForAcknowledge();
-            return person;
-        }
-    }
+    private final RecruitingClient client;
+    private final ResponseDispatcher dispatcher;
+    private final PersonPool pool;
+    private final RequestCoalescer coalescer;
+    private final RequestDeadlines deadlines;
+    private final EngineRouter router = new EngineRouter();
 
     public TeamCreationAdapterImpl(long delayMillis) {
-        this.delayMillis = delayMillis;
+        this(new RecruitingClient(DEFAULT_SERVICE_URL, new TokenBucketScheduler(delayMillis, 1, Integer.MAX_VALUE, 1)),
+                new ResponseDispatcher(65536, 256), null, null);
     }
 
-    public void setEngine(ProcessingEngine engine) {
-        this.engine = engine;
+    /**
+     * @param pool the cache used to serve requests without a network round-trip; may be null
+     * @param coalescer combines concurrent requests for the same region/gender into bulk requests; may be null
+     */
+    public TeamCreationAdapterImpl(RecruitingClient client, ResponseDispatcher dispatcher, PersonPool pool, RequestCoalescer coalescer) {
+        this.client = client;
+        this.dispatcher = dispatcher;
+        this.pool = pool;
+        this.coalescer = coalescer;
+        this.deadlines = client.getDeadlines();
     }
 
     @Override
-    public String asyncCreateLeader(boolean female) {
-        String url = "http://uinames.com/api/?gender=" + (female ? "female" : "male");
-        return asyncCreatePerson(url);
+    public void setEngine(int shard, ProcessingEngine engine) {
+        router.setEngine(shard, engine);
     }
 
     @Override
-    public String asyncCreateTeamMember(Person leader) {
-        String url = "http://uinames.com/api/?region=" + leader.getLocation();
-        return asyncCreatePerson(url);
+    public void asyncCreatePerson(String correlationId, PersonKey key, long deadlineNanos) {
+        if(pool != null) {
+            Person person = pool.take(key);
+            if(person != null) {
+                logger.trace("Serving {} from the pool: {}", correlationId, person);
+                notifyEngine(correlationId, person, null);
+                return;
+            }
+        }
+        deadlines.register(correlationId, deadlineNanos);
+        if(coalescer != null) {
+            // a cancelled member of a bulk request is only ignored
+            var request = coalescer.request(key, deadlineNanos);
+            request.whenComplete((person, exc) -> onFetched(correlationId, person, exc));
+            deadlines.attach(correlationId, request);
+        } else {
+            var request = client.fetch(key, 1, deadlineNanos);
+            request.whenComplete((persons, exc) -> {
+                if(exc == null && persons.isEmpty()) {
+                    exc = new Exception("Empty response");
+                }
+                onFetched(correlationId, (exc == null) ? persons.get(0) : null, exc);
+            });
+            deadlines.attach(correlationId, request);
+        }
     }
 
-    private void schedule(Runnable action) {
-        long delay;
-        synchronized (this) {
-            long currTime = System.currentTimeMillis();
-            lastScheduledStart = (lastScheduledStart == 0) ? currTime : lastScheduledStart + delayMillis;
-            delay = Math.max(0, lastScheduledStart - currTime);
+    @Override
+    public void cancel(String correlationId) {
+        if(deadlines.cancel(correlationId)) {
+            logger.trace("Cancelled the request with correlationId {}", correlationId);
         }
-        logger.trace("Scheduling action with delay: {} ms.", delay);
-        svc.schedule(action, delay, TimeUnit.MILLISECONDS);
     }
 
-    private String asyncCreatePerson(String url) {
-        String correlationId = createCorrelationId();
-        schedule(() -> {
-                logger.trace("Getting url: {}", url);
-                client.prepareGet(url).execute(new PersonHandler(correlationId));
-            }
-        );
-        return correlationId;
+    private void onFetched(String correlationId, Person person, Throwable exc) {
+        if(exc instanceof CancellationException) {
+            // the workflow no longer waits for the response
+            return;
+        }
+        if(exc != null && toException(exc) instanceof RequestDeadlines.ExpiredException) {
+            // already counted by the client
+            deadlines.abandon(correlationId);
+            return;
+        }
+        if(!deadlines.complete(correlationId)) {
+            logger.debug("Discarding the late response for correlationId {}", correlationId);
+            return;
+        }
+        if(exc != null) {
+            logger.debug("Request with correlationId {} failed: {}", correlationId, exc.toString());
+            notifyEngine(correlationId, null, toException(exc));
+        } else {
+            logger.debug("notifying: {}", person);
+            notifyEngine(correlationId, person, null);
+        }
     }
 
-    private static String createCorrelationId() {
-        return "CORRELATION-ID-" + correlationIdCounter.incrementAndGet();
+    private void notifyEngine(String correlationId, Person person, Exception exc) {
+        dispatcher.dispatch(router.engineFor(correlationId), new TimedResponse<>(correlationId, person, exc));
     }
 
-    private static Person getPerson(Response response) throws Exception {
-        if(response.getStatusCode() / 100 != 2) {
-            throw new Exception("HTTP-" + response.getStatusCode() + ": " + response.getStatusText());
+    static Exception toException(Throwable t) {
+        if(t instanceof CompletionException && t.getCause() != null) {
+            t = t.getCause();
         }
-        var node = new ObjectMapper().readTree(response.getResponseBody());
-        String firstName = node.get("name").asText();
-        String lastName = node.get("surname").asText();
-        String gender = node.get("gender").asText();
-        String location = node.get("region").asText();
-        return new Person(firstName, lastName, location, "female".equals(gender));
+        return (t instanceof Exception) ? (Exception) t : new Exception(t);
     }
 }
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Forwards the workflow events to all registered listeners.
+ */
+public class TeamCreationEvents implements TeamCreationListener {
+    private final List<TeamCreationListener> listeners = new CopyOnWriteArrayList<>();
+
+    public void addListener(TeamCreationListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(TeamCreationListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void workflowCompleted(String workflowId, boolean teamCreated) {
+        for(TeamCreationListener listener : listeners) {
+            listener.workflowCompleted(workflowId, teamCreated);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+/**
+ * Receives events from the team creation workflows. The methods are called on the engine's processor threads and must not block.
+ */
+public interface TeamCreationListener {
+    /**
+     * Called when a workflow finishes, whether or not a team could be created.
+     */
+    void workflowCompleted(String workflowId, boolean teamCreated);
+}
@@ -15,48 +15,50 @@
  */
 package org.copperengine.demo.jpms;
 
-import org.aeonbits.owner.Config;
-import org.aeonbits.owner.Config.Sources;
 import org.aeonbits.owner.ConfigFactory;
-import org.copperengine.core.CopperException;
 import org.copperengine.core.DependencyInjector;
+import org.copperengine.core.common.DefaultProcessorPoolManager;
 import org.copperengine.core.common.DefaultTicketPoolManager;
+import org.copperengine.core.common.ProcessorPoolManager;
 import org.copperengine.core.common.SimpleJmxExporter;
 import org.copperengine.core.common.TicketPool;
 import org.copperengine.core.common.TicketPoolManager;
+import org.copperengine.core.common.WorkflowRepository;
 import org.copperengine.core.monitoring.LoggingStatisticCollector;
 import org.copperengine.core.tranzient.TransientEngineFactory;
+import org.copperengine.core.tranzient.TransientPriorityProcessorPool;
+import org.copperengine.core.tranzient.TransientProcessorPool;
 import org.copperengine.core.tranzient.TransientScottyEngine;
+import org.copperengine.core.wfrepo.ClasspathWorkflowRepository;
 import org.copperengine.core.wfrepo.FileBasedWorkflowRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.management.ObjectName;
 import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class TeamCreationMain {
     private static final Logger logger = LoggerFactory.getLogger(TeamCreationMain.class);
+    private static final String WORKFLOW_PACKAGE = "org.copperengine.demo.jpms.workflow";
 
     private final AppConfig config;
-    private TransientScottyEngine engine;
+    private EngineShards shards;
+    private DefaultDependencyInjector injector;
+    private final List<ObjectName> mxBeanNames = new ArrayList<>();
     private final Random rnd = new Random();
 
-    @Sources({"file:${team.creation.config}"})
-    interface AppConfig extends Config {
-        @DefaultValue("200")
-        int workflowCount();
-
-        @DefaultValue("50")
-        long delayMillis();
-
-        @DefaultValue("1")
-        int iterationCount();
-
-        @DefaultValue("5000")
-        long iterationDelayMillis();
-    }
-
     public TeamCreationMain(AppConfig config) {
         this.config = config;
     }
@@ -69,17 +71,93 @@ public class TeamCreationMain {
 	}
 
 	private void run() throws Exception {
-        runWithDependencyInjector(new DefaultDependencyInjector(config.delayMillis()));
+        RecruitingStubServer stubServer = null;
+        String serviceUrl = config.recruitingServiceUrl();
+        if(config.stubServerEnabled()) {
+            stubServer = RecruitingStubServer.create(config);
+            stubServer.start();
+            serviceUrl = stubServer.getUrl();
+        }
+        try {
+            injector = new DefaultDependencyInjector(config, serviceUrl);
+            runShards();
+        } finally {
+            if(injector != null) {
+                injector.close();
+            }
+            if(stubServer != null) {
+                stubServer.stop();
+            }
+        }
     }
 
-	private void runWithDependencyInjector(DependencyInjector dependencyInjector) throws Exception {
-        int workflowCount = config.workflowCount();
-		// create the processing engine; configure the directory containing workflow source files and the dependency injector
+	private void runShards() throws Exception {
+        int shardCount = Math.max(1, config.shardCount());
+        if(config.engineMode() == AppConfig.EngineMode.PERSISTENT) {
+            if(!config.workflowSourceDirectory().isEmpty()) {
+                logger.warn("The persistent engine loads the compiled workflows; {} is ignored.", config.workflowSourceDirectory());
+            }
+            // the requests awaited by recovered workflows keep their numbers, so new requests start above them
+            EngineRouter.startRequestNumbersAt(System.currentTimeMillis() << 20);
+            var engines = new ArrayList<DurableEngine>(shardCount);
+            for(int shard = 0; shard < shardCount; shard++) {
+                engines.add(DurableEngine.create(config, shard, injector.forShard(shard),
+                        new ClasspathWorkflowRepository(WORKFLOW_PACKAGE), processorPoolThreads(shardCount)));
+            }
+            shards = EngineShards.durable(engines);
+            injector.getEvents().addListener(shards);
+        } else {
+            var engines = new ArrayList<TransientScottyEngine>(shardCount);
+            for(int shard = 0; shard < shardCount; shard++) {
+                engines.add(createEngine(injector.forShard(shard), shardCount));
+            }
+            shards = new EngineShards(engines);
+        }
+        var footprint = new WorkflowFootprint(shards::getNumberOfWorkflowInstances);
+        registerMXBean("WorkflowFootprint", "team-creation-footprint", footprint);
+        SimpleJmxExporter exporter = startJmxExporter();
+        logStartupTimes();
+
+        if(config.loadDriverEnabled()) {
+            var driver = LoadDriver.create(shards, this::createRequest, config);
+            injector.getEvents().addListener(driver);
+            driver.run();
+            injector.getEvents().removeListener(driver);
+        } else {
+            runIterations(config.workflowCount());
+        }
+        if(footprint.getBytesPerWorkflow() >= 0) {
+            logger.info("Heap footprint: {} bytes per in-flight workflow.", footprint.getBytesPerWorkflow());
+        }
+
+        footprint.close();
+        exporter.shutdown();
+        unregisterMXBeans();
+        injector.shutdownAdapter();
+        shards.shutdown();
+    }
+
+    /**
+     * Creates and starts the engine of a shard, with its own processor pools and ticket pool.
+     */
+	private TransientScottyEngine createEngine(DependencyInjector dependencyInjector, int shardCount) {
+        int processorPoolThreads = processorPoolThreads(shardCount);
+		// create the processing engine; configure the workflow repository and the dependency injector
 		var factory = new TransientEngineFactory() {
 			@Override
 			protected File getWorkflowSourceDirectory() {
-				return new File("./src/workflow/java");
+				return new File(config.workflowSourceDirectory());
 			}
+
+            @Override
+            protected WorkflowRepository createWorkflowRepository() {
+                if(config.workflowSourceDirectory().isEmpty()) {
+                    // the workflow classes are compiled at build time; COPPER only instruments them when they are loaded
+                    return new ClasspathWorkflowRepository(WORKFLOW_PACKAGE);
+                }
+                logger.info("Compiling the workflows in {}", config.workflowSourceDirectory());
+                return super.createWorkflowRepository();
+            }
             @Override
             protected DependencyInjector createDependencyInjector() {
                 return dependencyInjector;
@@ -87,63 +165,188 @@ public class TeamCreationMain {
 
             @Override
             protected TicketPoolManager createTicketPoolManager() {
+                // The submitter releases its ticket in the completion event, while the workflow still holds its COPPER ticket
+                // for a moment. The headroom (one ticket per processor thread) ensures that engine.run never waits for a ticket.
+                // The hash distribution does not guarantee an even split, so each shard can hold all workflows in flight.
+                // The virtual-thread launcher, in contrast, lets engine.run wait for a ticket.
+                int ticketCount = config.maxWorkflowsInFlight() + processorPoolThreads + config.memberProcessorPoolThreads();
                 DefaultTicketPoolManager tpManager = new DefaultTicketPoolManager();
-                tpManager.setTicketPools(Collections.singletonList(new TicketPool(DefaultTicketPoolManager.DEFAULT_POOL_ID, workflowCount)));
+                tpManager.setTicketPools(Collections.singletonList(new TicketPool(DefaultTicketPoolManager.DEFAULT_POOL_ID, ticketCount)));
                 return tpManager;
             }
+
+            @Override
+            protected ProcessorPoolManager<TransientProcessorPool> createProcessorPoolManager() {
+                var pools = new ArrayList<TransientProcessorPool>();
+                pools.add(new TransientPriorityProcessorPool(TransientProcessorPool.DEFAULT_POOL_ID, processorPoolThreads));
+                if(config.memberProcessorPoolThreads() > 0) {
+                    pools.add(new TransientPriorityProcessorPool(DefaultDependencyInjector.MEMBER_PROCESSOR_POOL_ID,
+                            config.memberProcessorPoolThreads()));
+                }
+                var ppManager = new DefaultProcessorPoolManager<TransientProcessorPool>();
+                ppManager.setProcessorPools(pools);
+                return ppManager;
+            }
         };
 
 		//Startup the engine
-		engine = factory.create();
-        SimpleJmxExporter exporter = startJmxExporter();
+		return factory.create();
+    }
 
-        for(int k = 0; k < config.iterationCount(); k++) {
-            //start workflowCount workflows
-            for (int i = 0; i < workflowCount; i++) {
-                try {
-                    boolean femaleLeader = rnd.nextBoolean();
-                    int teamSize = 2 + rnd.nextInt(3);
-                    var request = new TeamCreationRequest(femaleLeader, teamSize);
-                    engine.run("TeamCreationWorkFlow", request);
-                } catch (CopperException e) {
-                    logger.error("copper error: ", e);
+    private int processorPoolThreads(int shardCount) {
+        // without an explicit setting, the CPUs are divided among the shards
+        return (config.processorPoolThreads() > 0)
+                ? config.processorPoolThreads() : Math.max(1, Runtime.getRuntime().availableProcessors() / shardCount);
+    }
+
+    /**
+     * Logs the cold-start cost: the time from the JVM start to the engine start and to the first completed workflow.
+     */
+    private void logStartupTimes() {
+        long jvmStartTime = ManagementFactory.getRuntimeMXBean().getStartTime();
+        logger.info("Engine started {} ms after JVM start.", System.currentTimeMillis() - jvmStartTime);
+        var firstCompleted = new AtomicBoolean();
+        injector.getEvents().addListener(new TeamCreationListener() {
+            @Override
+            public void workflowCompleted(String workflowId, boolean teamCreated) {
+                if(firstCompleted.compareAndSet(false, true)) {
+                    logger.info("First workflow completed {} ms after JVM start.", System.currentTimeMillis() - jvmStartTime);
+                    injector.getEvents().removeListener(this);
                 }
             }
+        });
+    }
+
+    private void runIterations(int workflowCount) throws Exception {
+        WorkflowLauncher launcher;
+        if(config.adapterMode() == AppConfig.AdapterMode.VIRTUAL_THREADS) {
+            launcher = new VirtualThreadWorkflowLauncher(shards);
+        } else {
+            var submitter = new WorkflowSubmitter(shards, config.maxWorkflowsInFlight(), config.maxPendingSubmissions(),
+                    TimeUnit.SECONDS.toMillis(config.workflowTicketTimeoutSeconds()));
+            registerMXBean("WorkflowSubmitter", "team-creation-submitter", submitter);
+            launcher = submitter;
+        }
+        injector.getEvents().addListener(launcher);
+        for(int k = 0; k < config.iterationCount(); k++) {
+            //submit workflowCount workflows; they are started as tickets become available
+            var requests = Stream.generate(this::createRequest).limit(workflowCount).collect(Collectors.toList());
+            var completions = launcher.submitAll(requests);
             logger.info("Running {} workflows...", workflowCount);
 
             // wait for all workflow instances to finish
-            int oldRemaining = workflowCount;
-            int remaining = engine.getNumberOfWorkflowInstances();
-            while(remaining > 0) {
+            var allCompleted = CompletableFuture.allOf(completions.toArray(new CompletableFuture<?>[0]));
+            long oldRemaining = workflowCount;
+            // the submitter fails the futures of the workflows that do not report their completion within the ticket timeout;
+            // the stall timeout only guards against a launcher that cannot start the queued workflows any more
+            long stallTimeoutNanos = TimeUnit.SECONDS.toNanos(2 * config.workflowTicketTimeoutSeconds());
+            long lastProgress = System.nanoTime();
+            while(!allCompleted.isDone()) {
+                try {
+                    allCompleted.get(1, TimeUnit.SECONDS);
+                } catch (TimeoutException | ExecutionException e) {
+                    // the failed submissions are reported below
+                }
+                // the engine has finished everything it was given
+                if(shards.getNumberOfWorkflowInstances() == 0 && launcher.getPendingCount() == 0) {
+                    break;
+                }
+                long remaining = completions.stream().filter(f -> !f.isDone()).count();
                 if(remaining != oldRemaining) {
-                    logger.info("{} workflows remaining...", remaining);
                     oldRemaining = remaining;
+                    lastProgress = System.nanoTime();
+                    logger.info("{} workflows remaining...", oldRemaining);
+                } else if(System.nanoTime() - lastProgress >= stallTimeoutNanos) {
+                    logger.error("Giving up on {} workflows: none has completed for {} s.", remaining, 2 * config.workflowTicketTimeoutSeconds());
+                    break;
                 }
-                Thread.sleep(1000);
-                remaining = engine.getNumberOfWorkflowInstances();
+            }
+            long failed = completions.stream().filter(CompletableFuture::isCompletedExceptionally).count();
+            if(failed > 0) {
+                logger.error("{} workflows could not be started or did not report their completion.", failed);
             }
             if(k < config.iterationCount() - 1) {
                 logger.info("Waiting {} ms. before starting the next iteration...", config.iterationDelayMillis());
                 Thread.sleep(config.iterationDelayMillis());
             }
         }
+        injector.getEvents().removeListener(launcher);
+        launcher.close();
+    }
 
-        exporter.shutdown();
-        engine.shutdown();
+    private TeamCreationRequest createRequest() {
+        boolean femaleLeader = rnd.nextBoolean();
+        int teamSize = 2 + rnd.nextInt(3);
+        int quorum = (config.memberQuorum() > 0) ? Math.min(teamSize, config.memberQuorum()) : teamSize;
+        return new TeamCreationRequest(femaleLeader, teamSize, quorum, config.memberQuorumTimeoutMillis());
     }
 
     private SimpleJmxExporter startJmxExporter() throws Exception {
         SimpleJmxExporter exporter = new SimpleJmxExporter();
-        exporter.addProcessingEngineMXBean("team-creation-engine", engine);
-        exporter.addWorkflowRepositoryMXBean("team-creation-workflow", (FileBasedWorkflowRepository)engine.getWfRepository());
-        engine.getProcessorPools().forEach(pool -> exporter.addProcessorPoolMXBean(pool.getId(), pool));
-
+        // one statistics collector for all shards
         LoggingStatisticCollector statisticsCollector = new LoggingStatisticCollector();
         statisticsCollector.start();
-        engine.setStatisticsCollector(statisticsCollector);
         exporter.addStatisticsCollectorMXBean("team-creation-statistics", statisticsCollector);
 
+        var engines = shards.getEngines();
+        for(int shard = 0; shard < engines.size(); shard++) {
+            var engine = engines.get(shard);
+            // with a single shard, the MXBeans keep their plain names
+            String suffix = (engines.size() == 1) ? "" : "@" + shard;
+            if(engine instanceof TransientScottyEngine) {
+                var transientEngine = (TransientScottyEngine) engine;
+                exporter.addProcessingEngineMXBean("team-creation-engine" + suffix, transientEngine);
+                if(transientEngine.getWfRepository() instanceof FileBasedWorkflowRepository) {
+                    exporter.addWorkflowRepositoryMXBean("team-creation-workflow" + suffix, (FileBasedWorkflowRepository)transientEngine.getWfRepository());
+                }
+                transientEngine.getProcessorPools().forEach(pool -> exporter.addProcessorPoolMXBean(pool.getId() + suffix, pool));
+                transientEngine.setStatisticsCollector(statisticsCollector);
+            } else {
+                var durableEngine = shards.getDurableEngines().get(shard);
+                var persistentEngine = durableEngine.getEngine();
+                exporter.addProcessingEngineMXBean("team-creation-engine" + suffix, persistentEngine);
+                persistentEngine.getProcessorPools().forEach(pool -> exporter.addProcessorPoolMXBean(pool.getId() + suffix, pool));
+                persistentEngine.setStatisticsCollector(statisticsCollector);
+                durableEngine.getDialect().setRuntimeStatisticsCollector(statisticsCollector);
+                durableEngine.getBatcher().setStatisticsCollector(statisticsCollector);
+            }
+        }
+
+        registerMXBean("EngineShards", "team-creation-shards", shards);
+        registerMXBean("WorkflowMetrics", "team-creation-workflow-metrics", injector.getMetrics());
+        if(injector.getPersonPool() != null) {
+            registerMXBean("PersonPool", "team-creation-person-pool", injector.getPersonPool());
+        }
+        if(injector.getScheduler() instanceof ConcurrencyLimitingScheduler) {
+            registerMXBean("ConcurrencyLimit", "team-creation-concurrency-limit", injector.getScheduler());
+        }
+        registerMXBean("RequestDeadlines", "team-creation-deadlines", injector.getDeadlines());
+        registerMXBean("TeamCreationAdapter", "team-creation-adapter", injector.getAdapterControl());
+        if(injector.getResultSink() != null) {
+            registerMXBean("ResultSink", "team-creation-results", injector.getResultSink());
+        }
+        if(injector.getHedgingPolicy() != null) {
+            registerMXBean("HedgingPolicy", "team-creation-hedging", injector.getHedgingPolicy());
+        }
+        if(injector.getCircuitBreaker() != null) {
+            registerMXBean("CircuitBreaker", ObjectName.quote(injector.getCircuitBreaker().getEndpoint()), injector.getCircuitBreaker());
+        }
+
         exporter.startup();
         return exporter;
     }
+
+    private void registerMXBean(String type, String name, Object mxBean) throws Exception {
+        var objectName = new ObjectName("org.copperengine.demo:type=" + type + ",name=" + name);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(mxBean, objectName);
+        mxBeanNames.add(objectName);
+    }
+
+    private void unregisterMXBeans() throws Exception {
+        var server = ManagementFactory.getPlatformMBeanServer();
+        for(ObjectName objectName : mxBeanNames) {
+            server.unregisterMBean(objectName);
+        }
+        mxBeanNames.clear();
+    }
 }
@@ -15,17 +15,53 @@
  */
 package org.copperengine.demo.jpms;
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 
+/**
+ * The data of a team creation workflow.
+ * The quorum policy lets the workflow create the team as soon as {@code memberQuorum} of the {@code teamSize} members
+ * have been recruited, or with the members recruited so far after {@code quorumTimeoutMillis};
+ * the requests of the remaining members are cancelled.
+ * The request is part of the state that a persistent engine stores with each workflow,
+ * so it is serialized without field descriptors.
+ */
 public class TeamCreationRequest implements Serializable {
     private static final long serialVersionUID = 1L;
+    private static final ObjectStreamField[] serialPersistentFields = {};
 
-    private final boolean femaleLeader;
-    private final int teamSize;
+    // not final, so that readObject can set them
+    private boolean femaleLeader;
+    private int teamSize;
+    private int memberQuorum;
+    private long quorumTimeoutMillis;
 
+    /**
+     * Creates a request that waits for all members.
+     */
     public TeamCreationRequest(boolean femaleLeader, int teamSize) {
+        this(femaleLeader, teamSize, teamSize, 0);
+    }
+
+    /**
+     * @param memberQuorum the number of members after which the team is created without waiting for the others (1..teamSize)
+     * @param quorumTimeoutMillis the maximum time to wait for the members; 0 means the default timeout of the workflow
+     */
+    public TeamCreationRequest(boolean femaleLeader, int teamSize, int memberQuorum, long quorumTimeoutMillis) {
+        if(memberQuorum < 1 || memberQuorum > teamSize) {
+            throw new IllegalArgumentException("memberQuorum must be between 1 and " + teamSize + ": " + memberQuorum);
+        }
+        if(quorumTimeoutMillis < 0) {
+            throw new IllegalArgumentException("quorumTimeoutMillis must not be negative: " + quorumTimeoutMillis);
+        }
         this.femaleLeader = femaleLeader;
         this.teamSize = teamSize;
+        this.memberQuorum = memberQuorum;
+        this.quorumTimeoutMillis = quorumTimeoutMillis;
     }
 
     public boolean isFemaleLeader() {
@@ -35,4 +71,31 @@ public class TeamCreationRequest implements Serializable {
     public int getTeamSize() {
         return teamSize;
     }
+
+    public int getMemberQuorum() {
+        return memberQuorum;
+    }
+
+    public long getQuorumTimeoutMillis() {
+        return quorumTimeoutMillis;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeBoolean(femaleLeader);
+        out.writeInt(teamSize);
+        out.writeInt(memberQuorum);
+        out.writeLong(quorumTimeoutMillis);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        femaleLeader = in.readBoolean();
+        teamSize = in.readInt();
+        memberQuorum = in.readInt();
+        quorumTimeoutMillis = in.readLong();
+        if(memberQuorum < 1 || memberQuorum > teamSize || quorumTimeoutMillis < 0) {
+            throw new InvalidObjectException("Invalid team creation request: " + memberQuorum + " of " + teamSize);
+        }
+    }
 }
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import org.copperengine.core.Response;
+
+/**
+ * A response that remembers when it was handed to the engine, so that the workflow can measure the delay until it resumes.
+ */
+public class TimedResponse<E> extends Response<E> {
+    private static final long serialVersionUID = 1L;
+
+    private transient long notifiedAt;
+
+    public TimedResponse(String correlationId, E response, Exception exception) {
+        super(correlationId, response, exception);
+    }
+
+    void markNotified() {
+        notifiedAt = System.nanoTime();
+    }
+
+    /**
+     * @return the value of {@link System#nanoTime()} when the response was passed to {@code engine.notify},
+     * or 0 if this is not known (for example, because the response is a timeout)
+     */
+    public static long notifiedAt(Response<?> response) {
+        return (response instanceof TimedResponse) ? ((TimedResponse<?>) response).notifiedAt : 0;
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A hashed timing wheel driven by a single daemon thread.
+ * Producers only append to a lock-free queue; the worker thread moves new timeouts into their buckets
+ * and runs the expired ones. The tasks are executed on the worker thread, so they must be short and non-blocking.
+ * While no timeout is pending, the worker does not tick but parks until the next timeout is scheduled.
+ */
+public class TimingWheel {
+    private static final Logger logger = LoggerFactory.getLogger(TimingWheel.class);
+
+    private static final int STATE_INIT = 0;
+    private static final int STATE_CANCELLED = 1;
+    private static final int STATE_EXPIRED = 2;
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Queue<Timeout> newTimeouts = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final long startTime;
+    private final Thread workerThread;
+    private volatile boolean running = true;
+    private volatile boolean idle;
+    private long tick;
+
+    public class Timeout {
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(STATE_INIT);
+        private Runnable task;
+        private long remainingRounds;
+        private Timeout next;
+        private Timeout prev;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * @return true if the task has been prevented from running by this call
+         */
+        public boolean cancel() {
+            if(!state.compareAndSet(STATE_INIT, STATE_CANCELLED)) {
+                return false;
+            }
+            task = null;
+            pendingCount.decrementAndGet();
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == STATE_CANCELLED;
+        }
+
+        private void expire() {
+            if(!state.compareAndSet(STATE_INIT, STATE_EXPIRED)) {
+                return;
+            }
+            pendingCount.decrementAndGet();
+            Runnable action = task;
+            task = null;
+            try {
+                action.run();
+            } catch (Throwable t) {
+                logger.warn("Timing wheel task failed.", t);
+            }
+        }
+    }
+
+    private static class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        private void add(Timeout timeout) {
+            if(head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        private Timeout remove(Timeout timeout) {
+            Timeout next = timeout.next;
+            if(timeout.prev != null) {
+                timeout.prev.next = next;
+            }
+            if(timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            }
+            if(timeout == head) {
+                head = next;
+            }
+            if(timeout == tail) {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            return next;
+        }
+
+        private void expireTimeouts(long deadline) {
+            Timeout timeout = head;
+            while(timeout != null) {
+                if(timeout.isCancelled()) {
+                    timeout = remove(timeout);
+                } else if(timeout.remainingRounds <= 0 && timeout.deadline <= deadline) {
+                    Timeout next = remove(timeout);
+                    timeout.expire();
+                    timeout = next;
+                } else {
+                    timeout.remainingRounds--;
+                    timeout = timeout.next;
+                }
+            }
+        }
+    }
+
+    public TimingWheel(String name, long tickDuration, TimeUnit unit, int ticksPerWheel) {
+        if(tickDuration <= 0) {
+            throw new IllegalArgumentException("tickDuration must be positive: " + tickDuration);
+        }
+        int size = Integer.highestOneBit(Math.max(ticksPerWheel, 1) - 1) << 1;
+        size = Math.max(size, 1);
+        this.wheel = new Bucket[size];
+        for(int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.startTime = System.nanoTime();
+        this.workerThread = new Thread(this::work, name);
+        workerThread.setDaemon(true);
+        workerThread.start();
+    }
+
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        if(!running) {
+            throw new IllegalStateException("The timing wheel has been shut down.");
+        }
+        long deadline = System.nanoTime() + unit.toNanos(Math.max(0, delay)) - startTime;
+        var timeout = new Timeout(task, deadline);
+        pendingCount.incrementAndGet();
+        newTimeouts.add(timeout);
+        if(idle) {
+            LockSupport.unpark(workerThread);
+        }
+        return timeout;
+    }
+
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    public void shutdown() {
+        running = false;
+        workerThread.interrupt();
+    }
+
+    private void work() {
+        while(running) {
+            if(pendingCount.get() == 0) {
+                parkWhileIdle();
+                continue;
+            }
+            long deadline = waitForNextTick();
+            if(deadline < 0) {
+                continue;
+            }
+            transferNewTimeouts();
+            wheel[(int) (tick & mask)].expireTimeouts(deadline);
+            tick++;
+        }
+    }
+
+    private void parkWhileIdle() {
+        idle = true;
+        // schedule increments the pending count before it checks the flag, so either it unparks or we see the count
+        if(pendingCount.get() == 0 && running) {
+            LockSupport.park(this);
+        }
+        idle = false;
+        // nothing was pending, so the ticks that passed in the meantime had nothing to expire
+        tick = Math.max(tick, (System.nanoTime() - startTime) / tickNanos);
+    }
+
+    private void transferNewTimeouts() {
+        Timeout timeout;
+        while((timeout = newTimeouts.poll()) != null) {
+            if(timeout.isCancelled()) {
+                continue;
+            }
+            long calculated = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (calculated - tick) / wheel.length;
+            // a timeout whose deadline already passed is put into the current bucket
+            long ticks = Math.max(calculated, tick);
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    private long waitForNextTick() {
+        long deadline = tickNanos * (tick + 1);
+        while(true) {
+            long currentTime = System.nanoTime() - startTime;
+            long sleepNanos = deadline - currentTime;
+            if(sleepNanos <= 0) {
+                return currentTime;
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(sleepNanos);
+            } catch (InterruptedException e) {
+                if(!running) {
+                    return -1;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free token bucket (implemented as a generic cell rate algorithm) feeding a {@link TimingWheel}.
+ * Up to {@code burstSize} actions may start immediately; afterwards the actions are spaced by {@code delayMillis}.
+ * The number of pending actions is bounded by {@code maxPending}.
+ */
+public class TokenBucketScheduler implements RateLimitingScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(TokenBucketScheduler.class);
+
+    private volatile long intervalNanos;
+    private volatile int burstSize;
+    private volatile long burstToleranceNanos;
+    private final int maxPending;
+    private final AtomicLong theoreticalArrivalTime;
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final TimingWheel wheel;
+    private final boolean ownsWheel;
+
+    public TokenBucketScheduler(long delayMillis, int burstSize, int maxPending, long tickMillis) {
+        this(delayMillis, burstSize, maxPending,
+                new TimingWheel("team-creation-scheduler", tickMillis, TimeUnit.MILLISECONDS, 512), true);
+    }
+
+    /**
+     * Creates a scheduler that uses a timing wheel shared with other components. The wheel is not shut down by {@link #shutdown()}.
+     */
+    public TokenBucketScheduler(long delayMillis, int burstSize, int maxPending, TimingWheel wheel) {
+        this(delayMillis, burstSize, maxPending, wheel, false);
+    }
+
+    private TokenBucketScheduler(long delayMillis, int burstSize, int maxPending, TimingWheel wheel, boolean ownsWheel) {
+        if(burstSize < 1) {
+            throw new IllegalArgumentException("burstSize must be at least 1: " + burstSize);
+        }
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        this.burstSize = burstSize;
+        this.burstToleranceNanos = (burstSize - 1) * intervalNanos;
+        this.maxPending = maxPending;
+        this.theoreticalArrivalTime = new AtomicLong(System.nanoTime());
+        this.wheel = wheel;
+        this.ownsWheel = ownsWheel;
+    }
+
+    @Override
+    public boolean schedule(Runnable action) {
+        if(pendingCount.incrementAndGet() > maxPending) {
+            pendingCount.decrementAndGet();
+            logger.debug("Rejecting action: {} actions already pending.", maxPending);
+            return false;
+        }
+        long now = System.nanoTime();
+        long delay = reserve(now) - now;
+        logger.trace("Scheduling action with delay: {} ns.", delay);
+        wheel.schedule(() -> {
+            pendingCount.decrementAndGet();
+            action.run();
+        }, delay, TimeUnit.NANOSECONDS);
+        return true;
+    }
+
+    private long reserve(long now) {
+        while(true) {
+            long tat = theoreticalArrivalTime.get();
+            long start = Math.max(now, tat - burstToleranceNanos);
+            long newTat = Math.max(tat, now) + intervalNanos;
+            if(theoreticalArrivalTime.compareAndSet(tat, newTat)) {
+                return start;
+            }
+        }
+    }
+
+    public long getDelayMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(intervalNanos);
+    }
+
+    public int getBurstSize() {
+        return burstSize;
+    }
+
+    /**
+     * Changes the pacing of the actions scheduled from now on; the actions already scheduled keep their start time.
+     */
+    public synchronized void setPacing(long delayMillis, int burstSize) {
+        if(delayMillis < 0 || burstSize < 1) {
+            throw new IllegalArgumentException("Invalid pacing: delayMillis=" + delayMillis + ", burstSize=" + burstSize);
+        }
+        long newIntervalNanos = TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        this.intervalNanos = newIntervalNanos;
+        this.burstSize = burstSize;
+        this.burstToleranceNanos = (burstSize - 1) * newIntervalNanos;
+        // forget the reservations made at the old rate
+        theoreticalArrivalTime.set(System.nanoTime());
+    }
+
+    @Override
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    @Override
+    public void shutdown() {
+        if(ownsWheel) {
+            wheel.shutdown();
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import org.copperengine.core.ProcessingEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A {@link TeamCreationAdapter} that performs each recruiting call as plain blocking code on its own virtual thread:
+ * blocking HTTP request, decoding and {@code engine.notify}.
+ * Only the call blocks: the acknowledge of {@code engine.notify} is not awaited, as in {@link ResponseDispatcher}.
+ * The scheduler only decides when the virtual thread is started.
+ * Requests whose deadline has passed are not sent, the HTTP timeout ends at the deadline,
+ * and late responses are discarded before {@code engine.notify}.
+ * A cancelled request interrupts its virtual thread, which aborts the blocking HTTP request.
+ */
+public class VirtualThreadTeamCreationAdapter implements ShardedTeamCreationAdapter {
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadTeamCreationAdapter.class);
+
+    private final String serviceUrl;
+    private final RateLimitingScheduler scheduler;
+    private final WorkflowMetrics metrics;
+    private volatile int requestTimeoutMillis;
+    private final RequestDeadlines deadlines;
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("recruiting-", 0).factory());
+    private final HttpClient client;
+    private final EngineRouter router = new EngineRouter();
+
+    public VirtualThreadTeamCreationAdapter(String serviceUrl, RateLimitingScheduler scheduler, WorkflowMetrics metrics,
+                                            int requestTimeoutMillis, RequestDeadlines deadlines) {
+        this.serviceUrl = serviceUrl;
+        this.scheduler = scheduler;
+        this.metrics = metrics;
+        this.requestTimeoutMillis = requestTimeoutMillis;
+        this.deadlines = deadlines;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(executor)
+                .build();
+    }
+
+    @Override
+    public void setEngine(int shard, ProcessingEngine engine) {
+        router.setEngine(shard, engine);
+    }
+
+    public int getRequestTimeoutMillis() {
+        return requestTimeoutMillis;
+    }
+
+    /**
+     * Changes the timeout of the requests sent from now on.
+     */
+    public void setRequestTimeoutMillis(int requestTimeoutMillis) {
+        this.requestTimeoutMillis = requestTimeoutMillis;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public void asyncCreatePerson(String correlationId, PersonKey key, long deadlineNanos) {
+        deadlines.register(correlationId, deadlineNanos);
+        long queuedAt = System.nanoTime();
+        boolean scheduled = scheduler.schedule(() -> {
+            var call = recruitingCall(correlationId, key, deadlineNanos, queuedAt);
+            deadlines.attach(correlationId, call);
+            executor.execute(call);
+        });
+        if(!scheduled) {
+            executor.execute(() -> notifyEngine(correlationId, null, new RejectedExecutionException("Too many pending requests.")));
+        }
+    }
+
+    @Override
+    public void cancel(String correlationId) {
+        if(deadlines.cancel(correlationId)) {
+            logger.trace("Cancelled the request with correlationId {}", correlationId);
+        }
+    }
+
+    /**
+     * Exactly one of the call and its cancellation before the start releases the slot taken in the scheduler.
+     */
+    private FutureTask<Void> recruitingCall(String correlationId, PersonKey key, long deadlineNanos, long queuedAt) {
+        var claimed = new AtomicBoolean();
+        return new FutureTask<>(() -> {
+            if(!claimed.compareAndSet(false, true)) {
+                return;
+            }
+            metrics.record(WorkflowMetrics.Phase.SCHEDULER_QUEUEING, System.nanoTime() - queuedAt);
+            if(RequestDeadlines.isExpired(deadlineNanos)) {
+                deadlines.onExpiredBeforeSend();
+                deadlines.abandon(correlationId);
+                scheduler.onRequestSkipped();
+                return;
+            }
+            recruit(correlationId, key, deadlineNanos);
+        }, null) {
+            @Override
+            protected void done() {
+                if(isCancelled() && claimed.compareAndSet(false, true)) {
+                    scheduler.onRequestSkipped();
+                }
+            }
+        };
+    }
+
+    private void recruit(String correlationId, PersonKey key, long deadlineNanos) {
+        String url = RecruitingClient.buildUrl(serviceUrl, key, 1);
+        logger.trace("Getting url: {}", url);
+        long timeoutMillis = Math.max(1, RequestDeadlines.remainingMillis(deadlineNanos, requestTimeoutMillis));
+        var request = HttpRequest.newBuilder(URI.create(url)).timeout(Duration.ofMillis(timeoutMillis)).GET().build();
+        long startTime = System.nanoTime();
+        Person person = null;
+        Exception exc = null;
+        boolean dropped = true;
+        boolean cancelled = false;
+        metrics.onRequestSent();
+        try {
+            HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            List<Person> persons;
+            try(InputStream in = response.body()) {
+                if(response.statusCode() / 100 != 2) {
+                    throw new Exception("HTTP-" + response.statusCode());
+                }
+                dropped = false;
+                long decodeStart = System.nanoTime();
+                persons = PersonDecoder.decodeList(in);
+                metrics.record(WorkflowMetrics.Phase.DECODE, System.nanoTime() - decodeStart);
+            }
+            if(persons.isEmpty()) {
+                throw new Exception("Empty response");
+            }
+            person = persons.get(0);
+        } catch (InterruptedException e) {
+            // cancelled, or the adapter is shut down
+            Thread.currentThread().interrupt();
+            cancelled = true;
+        } catch (Exception e) {
+            if(e instanceof HttpTimeoutException) {
+                metrics.onRequestTimeout();
+                if(RequestDeadlines.isExpired(deadlineNanos)) {
+                    deadlines.onAbortedAtDeadline();
+                }
+            } else {
+                metrics.onRequestError();
+            }
+            exc = e;
+        } finally {
+            long rtt = System.nanoTime() - startTime;
+            metrics.onRequestFinished();
+            if(cancelled) {
+                scheduler.onRequestSkipped();
+            } else {
+                metrics.record(WorkflowMetrics.Phase.HTTP, rtt);
+                scheduler.onRequestCompleted(rtt, dropped);
+            }
+        }
+        if(cancelled) {
+            deadlines.abandon(correlationId);
+            return;
+        }
+        if(exc != null) {
+            logger.debug("Request with correlationId {} failed: {}", correlationId, exc.toString());
+        }
+        notifyEngine(correlationId, person, exc);
+    }
+
+    private void notifyEngine(String correlationId, Person person, Exception exc) {
+        if(!deadlines.complete(correlationId)) {
+            logger.debug("Discarding the late response for correlationId {}", correlationId);
+            return;
+        }
+        var response = new TimedResponse<>(correlationId, person, exc);
+        response.markNotified();
+        router.engineFor(correlationId).notify(response, ResponseDispatcher.NON_BLOCKING_ACK);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import org.copperengine.core.CopperException;
+import org.copperengine.core.WorkflowInstanceDescr;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Starts each workflow with a blocking {@code engine.run} on its own virtual thread,
+ * which waits for a ticket of the engine if all of them are taken; a launch waiting for a ticket does not hold up the others.
+ * This is the counterpart of the {@link VirtualThreadTeamCreationAdapter}; the {@link WorkflowSubmitter} starts
+ * the workflows without blocking instead.
+ */
+public class VirtualThreadWorkflowLauncher implements WorkflowLauncher {
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadWorkflowLauncher.class);
+    private static final String WORKFLOW_NAME = "TeamCreationWorkFlow";
+
+    private final EngineShards shards;
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("workflow-launcher-", 0).factory());
+    private final Map<String, CompletableFuture<Boolean>> running = new ConcurrentHashMap<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicLong idCounter = new AtomicLong();
+
+    public VirtualThreadWorkflowLauncher(EngineShards shards) {
+        this.shards = shards;
+    }
+
+    @Override
+    public List<CompletableFuture<Boolean>> submitAll(List<TeamCreationRequest> requests) {
+        var futures = new ArrayList<CompletableFuture<Boolean>>(requests.size());
+        for(TeamCreationRequest request : requests) {
+            var future = new CompletableFuture<Boolean>();
+            futures.add(future);
+            pendingCount.incrementAndGet();
+            try {
+                executor.execute(() -> start(request, future));
+            } catch (RejectedExecutionException e) {
+                pendingCount.decrementAndGet();
+                future.completeExceptionally(e);
+            }
+        }
+        return futures;
+    }
+
+    @Override
+    public void workflowCompleted(String workflowId, boolean teamCreated) {
+        var future = running.remove(workflowId);
+        if(future != null) {
+            future.complete(teamCreated);
+        }
+    }
+
+    @Override
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    /**
+     * Interrupts the launches still waiting for a ticket.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private void start(TeamCreationRequest request, CompletableFuture<Boolean> future) {
+        String id = shards.workflowId("TEAM-", idCounter.incrementAndGet());
+        running.put(id, future);
+        try {
+            shards.run(new WorkflowInstanceDescr<>(WORKFLOW_NAME, request, id, null, null));
+        } catch (CopperException | RuntimeException e) {
+            logger.error("Cannot start workflow {}", id, e);
+            running.remove(id);
+            future.completeExceptionally(e);
+        } finally {
+            pendingCount.decrementAndGet();
+        }
+    }
+}
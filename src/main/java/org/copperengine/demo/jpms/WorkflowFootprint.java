@@ -0,0 +1,150 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.Set;
+import java.util.function.IntSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Estimates the heap footprint of an in-flight workflow.
+ * After each garbage collection, the live heap and the number of workflow instances are recorded;
+ * the bytes per workflow are the slope of a least-squares fit over the last {@value #MAX_SAMPLES} samples,
+ * so the part of the heap that does not depend on the number of workflows cancels out.
+ */
+public class WorkflowFootprint implements WorkflowFootprintMXBean, NotificationListener {
+    private static final String GC_NOTIFICATION = "com.sun.management.gc.notification";
+    private static final int MAX_SAMPLES = 32;
+
+    private final IntSupplier workflowCount;
+    private final Set<String> heapPools;
+    private final long[] heapSamples = new long[MAX_SAMPLES];
+    private final int[] workflowSamples = new int[MAX_SAMPLES];
+    private int sampleCount;
+    private int nextSample;
+
+    /**
+     * @param workflowCount supplies the current number of workflow instances
+     */
+    public WorkflowFootprint(IntSupplier workflowCount) {
+        this.workflowCount = workflowCount;
+        this.heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .map(MemoryPoolMXBean::getName)
+                .collect(Collectors.toSet());
+        for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if(gc instanceof NotificationEmitter) {
+                ((NotificationEmitter) gc).addNotificationListener(this, null, null);
+            }
+        }
+    }
+
+    public void close() {
+        for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if(gc instanceof NotificationEmitter) {
+                try {
+                    ((NotificationEmitter) gc).removeNotificationListener(this);
+                } catch (ListenerNotFoundException e) {
+                    // not registered
+                }
+            }
+        }
+    }
+
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        if(!GC_NOTIFICATION.equals(notification.getType()) || !(notification.getUserData() instanceof CompositeData)) {
+            return;
+        }
+        // the gc notification is read as open data, which does not require the jdk.management module
+        var gcInfo = (CompositeData) ((CompositeData) notification.getUserData()).get("gcInfo");
+        var usageAfterGc = (TabularData) gcInfo.get("memoryUsageAfterGc");
+        long heapUsed = 0;
+        for(Object row : usageAfterGc.values()) {
+            var entry = (CompositeData) row;
+            if(heapPools.contains((String) entry.get("key"))) {
+                heapUsed += MemoryUsage.from((CompositeData) entry.get("value")).getUsed();
+            }
+        }
+        addSample(heapUsed, workflowCount.getAsInt());
+    }
+
+    private synchronized void addSample(long heapUsed, int workflows) {
+        heapSamples[nextSample] = heapUsed;
+        workflowSamples[nextSample] = workflows;
+        nextSample = (nextSample + 1) % MAX_SAMPLES;
+        sampleCount = Math.min(sampleCount + 1, MAX_SAMPLES);
+    }
+
+    private int lastSample() {
+        return (nextSample + MAX_SAMPLES - 1) % MAX_SAMPLES;
+    }
+
+    @Override
+    public synchronized long getHeapUsedAfterLastGc() {
+        return (sampleCount == 0) ? 0 : heapSamples[lastSample()];
+    }
+
+    @Override
+    public synchronized int getWorkflowsAtLastGc() {
+        return (sampleCount == 0) ? 0 : workflowSamples[lastSample()];
+    }
+
+    @Override
+    public synchronized long getBytesPerWorkflow() {
+        double meanWorkflows = 0;
+        double meanHeap = 0;
+        for(int i = 0; i < sampleCount; i++) {
+            meanWorkflows += workflowSamples[i];
+            meanHeap += heapSamples[i];
+        }
+        meanWorkflows /= Math.max(1, sampleCount);
+        meanHeap /= Math.max(1, sampleCount);
+        double covariance = 0;
+        double variance = 0;
+        for(int i = 0; i < sampleCount; i++) {
+            double dx = workflowSamples[i] - meanWorkflows;
+            covariance += dx * (heapSamples[i] - meanHeap);
+            variance += dx * dx;
+        }
+        // at least two samples with different numbers of workflows are needed
+        if(variance == 0) {
+            return -1;
+        }
+        return Math.max(0, Math.round(covariance / variance));
+    }
+
+    @Override
+    public synchronized int getSampleCount() {
+        return sampleCount;
+    }
+
+    @Override
+    public int getRegionCount() {
+        return RegionDictionary.size();
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Starts {@code TeamCreationWorkflow}s and reports their outcome.
+ * It must be registered with the {@link TeamCreationEvents}, which signal the completion of the workflows.
+ */
+public interface WorkflowLauncher extends TeamCreationListener, AutoCloseable {
+    /**
+     * @return one future per request, completed with the outcome of its workflow (team created or not)
+     */
+    List<CompletableFuture<Boolean>> submitAll(List<TeamCreationRequest> requests);
+
+    /**
+     * @return the number of submitted requests whose workflow has not been started yet
+     */
+    int getPendingCount();
+
+    @Override
+    void close();
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregates the latencies of the workflow phases and of the adapter in lock-free histograms,
+ * and counts the HTTP requests in striped counters.
+ * Recording does not allocate, so the instrumentation can stay enabled in production.
+ */
+public class WorkflowMetrics implements WorkflowMetricsMXBean {
+    public enum Phase {LEADER, MEMBER_FAN_OUT, MEMBERS, WORKFLOW, HTTP, DECODE, SCHEDULER_QUEUEING, NOTIFY_TO_RESUME}
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[PHASES.length];
+    private final LongAdder requestCount = new LongAdder();
+    private final LongAdder inFlightCount = new LongAdder();
+    private final LongAdder errorCount = new LongAdder();
+    private final LongAdder timeoutCount = new LongAdder();
+
+    public WorkflowMetrics() {
+        for(int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    public void record(Phase phase, long nanos) {
+        histograms[phase.ordinal()].record(nanos);
+    }
+
+    /**
+     * Records the delay between the notification of the most recent response and the time the workflow resumed.
+     * @param lastNotifiedAt the latest {@link TimedResponse#notifiedAt(org.copperengine.core.Response)} value of the responses; ignored if 0
+     */
+    public void recordResume(long resumedAt, long lastNotifiedAt) {
+        if(lastNotifiedAt != 0) {
+            record(Phase.NOTIFY_TO_RESUME, resumedAt - lastNotifiedAt);
+        }
+    }
+
+    public void onRequestSent() {
+        requestCount.increment();
+        inFlightCount.increment();
+    }
+
+    /**
+     * Called once for each sent request, whatever its outcome.
+     */
+    public void onRequestFinished() {
+        inFlightCount.decrement();
+    }
+
+    public void onRequestError() {
+        errorCount.increment();
+    }
+
+    public void onRequestTimeout() {
+        timeoutCount.increment();
+    }
+
+    public long getRequestCount() {
+        return requestCount.sum();
+    }
+
+    public long getInFlightCount() {
+        return inFlightCount.sum();
+    }
+
+    public long getErrorCount() {
+        return errorCount.sum();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.sum();
+    }
+
+    public LatencyHistogram getHistogram(Phase phase) {
+        return histograms[phase.ordinal()];
+    }
+
+    private LatencySnapshot snapshot(Phase phase) {
+        return new LatencySnapshot(getHistogram(phase));
+    }
+
+    @Override
+    public LatencySnapshot getLeaderLatency() {
+        return snapshot(Phase.LEADER);
+    }
+
+    @Override
+    public LatencySnapshot getMemberFanOutLatency() {
+        return snapshot(Phase.MEMBER_FAN_OUT);
+    }
+
+    @Override
+    public LatencySnapshot getMembersLatency() {
+        return snapshot(Phase.MEMBERS);
+    }
+
+    @Override
+    public LatencySnapshot getWorkflowLatency() {
+        return snapshot(Phase.WORKFLOW);
+    }
+
+    @Override
+    public LatencySnapshot getHttpLatency() {
+        return snapshot(Phase.HTTP);
+    }
+
+    @Override
+    public LatencySnapshot getDecodeTime() {
+        return snapshot(Phase.DECODE);
+    }
+
+    @Override
+    public LatencySnapshot getSchedulerQueueingDelay() {
+        return snapshot(Phase.SCHEDULER_QUEUEING);
+    }
+
+    @Override
+    public LatencySnapshot getNotifyToResumeDelay() {
+        return snapshot(Phase.NOTIFY_TO_RESUME);
+    }
+
+    @Override
+    public void reset() {
+        for(LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+public interface WorkflowMetricsMXBean {
+    /** From issuing the leader request until the leader response is available in the workflow. */
+    LatencySnapshot getLeaderLatency();
+
+    /** The time needed to issue all member requests. */
+    LatencySnapshot getMemberFanOutLatency();
+
+    /** From issuing the last member request until all member responses are available in the workflow. */
+    LatencySnapshot getMembersLatency();
+
+    /** From issuing the leader request until the team is complete. */
+    LatencySnapshot getWorkflowLatency();
+
+    /** The duration of the HTTP requests sent to the recruiting service. */
+    LatencySnapshot getHttpLatency();
+
+    /** The time needed to decode the responses of the recruiting service. */
+    LatencySnapshot getDecodeTime();
+
+    /** The time a request waits in the pacing scheduler before it is sent. */
+    LatencySnapshot getSchedulerQueueingDelay();
+
+    /** From {@code engine.notify} until the workflow resumes. */
+    LatencySnapshot getNotifyToResumeDelay();
+
+    void reset();
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import org.copperengine.core.CopperException;
+import org.copperengine.core.WorkflowInstanceDescr;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Starts {@code TeamCreationWorkflow}s on behalf of any number of producer threads without blocking them.
+ * A workflow is only started if one of the {@code maxInFlight} tickets is available, so {@code engine.run} never waits for a ticket.
+ * <ul>
+ *     <li>{@link #trySubmit(TeamCreationRequest)} starts the workflow immediately or signals that no ticket is available.</li>
+ *     <li>{@link #submit(TeamCreationRequest)} queues the request until a ticket becomes available,
+ *     or fails it at once if {@code maxPending} requests are already waiting.</li>
+ * </ul>
+ * The returned futures complete with the outcome of the workflow (team created or not).
+ * Several workflows started at once (by {@link #submitAll(List)} or when tickets are released) are started with one
+ * {@code runBatch} per shard, which a persistent engine writes in a single transaction.
+ * The submitter must be registered with the {@link TeamCreationEvents}, which signal the completion of the workflows.
+ * The completion events arrive on the engine's processor threads, so they only release the ticket;
+ * the futures are completed and the queued requests are started by the submitter's own thread.
+ * A workflow that fails or is removed from the engine never sends its completion event, so the submitter thread
+ * also releases the tickets held longer than the ticket timeout and fails their futures with a {@link TimeoutException}.
+ */
+public class WorkflowSubmitter implements WorkflowLauncher, WorkflowSubmitterMXBean {
+    private static final Logger logger = LoggerFactory.getLogger(WorkflowSubmitter.class);
+    private static final String WORKFLOW_NAME = "TeamCreationWorkFlow";
+
+    private final EngineShards shards;
+    private final Semaphore tickets;
+    private final int maxPending;
+    private final Queue<Submission> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final Map<String, InFlight> inFlight = new ConcurrentHashMap<>();
+    private final long ticketTimeoutNanos;
+    private final AtomicLong idCounter = new AtomicLong();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        var thread = new Thread(runnable, "team-creation-submitter");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+    private final LongAdder startedCount = new LongAdder();
+    private final LongAdder completedCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+    private final LongAdder timedOutCount = new LongAdder();
+
+    private static class Submission {
+        private final TeamCreationRequest request;
+        private final CompletableFuture<Boolean> future;
+
+        private Submission(TeamCreationRequest request, CompletableFuture<Boolean> future) {
+            this.request = request;
+            this.future = future;
+        }
+    }
+
+    private static class InFlight {
+        private final CompletableFuture<Boolean> future;
+        private final long startedAtNanos = System.nanoTime();
+
+        private InFlight(CompletableFuture<Boolean> future) {
+            this.future = future;
+        }
+    }
+
+    /**
+     * @param maxInFlight the number of workflows that may run at the same time; must not exceed the size of the ticket pool of a shard
+     * @param maxPending the maximum number of requests queued by {@link #submit(TeamCreationRequest)}
+     * @param ticketTimeoutMillis the time after which the ticket of a workflow that has not reported its completion is released
+     */
+    public WorkflowSubmitter(EngineShards shards, int maxInFlight, int maxPending, long ticketTimeoutMillis) {
+        this.shards = shards;
+        this.tickets = new Semaphore(maxInFlight);
+        this.maxPending = maxPending;
+        this.ticketTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(ticketTimeoutMillis);
+        long sweepMillis = Math.max(1, ticketTimeoutMillis / 4);
+        executor.scheduleWithFixedDelay(this::releaseTimedOutTickets, sweepMillis, sweepMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts a workflow if a ticket is available.
+     * @return a future completed with the outcome of the workflow, or null if no ticket is available
+     */
+    public CompletableFuture<Boolean> trySubmit(TeamCreationRequest request) {
+        // queued submissions come first
+        if(pendingCount.get() > 0 || !tickets.tryAcquire()) {
+            return null;
+        }
+        var future = new CompletableFuture<Boolean>();
+        start(request, future);
+        return future;
+    }
+
+    /**
+     * Starts workflows for the requests until no ticket is available.
+     * @return the futures of the started workflows; the remaining requests have not been submitted
+     */
+    public List<CompletableFuture<Boolean>> trySubmitAll(List<TeamCreationRequest> requests) {
+        var futures = new ArrayList<CompletableFuture<Boolean>>(requests.size());
+        var batch = new ArrayList<Submission>(requests.size());
+        for(TeamCreationRequest request : requests) {
+            if(pendingCount.get() > 0 || !tickets.tryAcquire()) {
+                break;
+            }
+            var future = new CompletableFuture<Boolean>();
+            batch.add(new Submission(request, future));
+            futures.add(future);
+        }
+        start(batch);
+        return futures;
+    }
+
+    /**
+     * Starts a workflow as soon as a ticket is available.
+     * @return a future completed with the outcome of the workflow; it fails with a {@link RejectedExecutionException}
+     * if too many requests are waiting for a ticket
+     */
+    public CompletableFuture<Boolean> submit(TeamCreationRequest request) {
+        var future = trySubmit(request);
+        if(future != null) {
+            return future;
+        }
+        future = new CompletableFuture<>();
+        if(pendingCount.incrementAndGet() > maxPending) {
+            pendingCount.decrementAndGet();
+            rejectedCount.increment();
+            future.completeExceptionally(new RejectedExecutionException(maxPending + " submissions already waiting for a ticket."));
+            return future;
+        }
+        pending.add(new Submission(request, future));
+        drain();
+        return future;
+    }
+
+    @Override
+    public List<CompletableFuture<Boolean>> submitAll(List<TeamCreationRequest> requests) {
+        var futures = trySubmitAll(requests);
+        for(TeamCreationRequest request : requests.subList(futures.size(), requests.size())) {
+            futures.add(submit(request));
+        }
+        return futures;
+    }
+
+    @Override
+    public void workflowCompleted(String workflowId, boolean teamCreated) {
+        var entry = inFlight.remove(workflowId);
+        if(entry == null) {
+            // not started by this submitter, or its ticket has timed out
+            return;
+        }
+        completedCount.increment();
+        tickets.release();
+        try {
+            entry.future.completeAsync(() -> teamCreated, executor);
+            if(!pending.isEmpty() && drainScheduled.compareAndSet(false, true)) {
+                executor.execute(() -> {
+                    drainScheduled.set(false);
+                    drain();
+                });
+            }
+        } catch (RejectedExecutionException e) {
+            // closed: nothing is started any more
+            entry.future.complete(teamCreated);
+        }
+    }
+
+    /**
+     * Stops the submitter thread; queued requests are no longer started.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private void releaseTimedOutTickets() {
+        long now = System.nanoTime();
+        for(var entry : inFlight.entrySet()) {
+            var workflow = entry.getValue();
+            // remove(key, value) loses against a completion event arriving at the same time
+            if(now - workflow.startedAtNanos >= ticketTimeoutNanos && inFlight.remove(entry.getKey(), workflow)) {
+                logger.warn("Workflow {} has not reported its completion; releasing its ticket.", entry.getKey());
+                timedOutCount.increment();
+                tickets.release();
+                workflow.future.completeExceptionally(new TimeoutException("Workflow " + entry.getKey() + " has not reported its completion."));
+            }
+        }
+        drain();
+    }
+
+    private void drain() {
+        List<Submission> batch = null;
+        while(!pending.isEmpty() && tickets.tryAcquire()) {
+            var submission = pending.poll();
+            if(submission == null) {
+                tickets.release();
+                break;
+            }
+            pendingCount.decrementAndGet();
+            if(batch == null) {
+                batch = new ArrayList<>();
+            }
+            batch.add(submission);
+        }
+        if(batch != null) {
+            start(batch);
+        }
+    }
+
+    private void start(TeamCreationRequest request, CompletableFuture<Boolean> future) {
+        String id = shards.workflowId("TEAM-", idCounter.incrementAndGet());
+        inFlight.put(id, new InFlight(future));
+        try {
+            shards.run(new WorkflowInstanceDescr<>(WORKFLOW_NAME, request, id, null, null));
+            startedCount.increment();
+        } catch (CopperException | RuntimeException e) {
+            logger.error("Cannot start workflow {}", id, e);
+            if(inFlight.remove(id) != null) {
+                tickets.release();
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void start(List<Submission> batch) {
+        if(batch.size() <= 1) {
+            batch.forEach(submission -> start(submission.request, submission.future));
+            return;
+        }
+        var descrs = new ArrayList<WorkflowInstanceDescr<?>>(batch.size());
+        for(Submission submission : batch) {
+            String id = shards.workflowId("TEAM-", idCounter.incrementAndGet());
+            inFlight.put(id, new InFlight(submission.future));
+            descrs.add(new WorkflowInstanceDescr<>(WORKFLOW_NAME, submission.request, id, null, null));
+        }
+        var failed = shards.runBatch(descrs);
+        startedCount.add(descrs.size() - failed.size());
+        for(WorkflowInstanceDescr<?> descr : failed) {
+            var entry = inFlight.remove(descr.getId());
+            if(entry != null) {
+                tickets.release();
+                entry.future.completeExceptionally(new RejectedExecutionException("Cannot start workflow " + descr.getId()));
+            }
+        }
+    }
+
+    @Override
+    public int getAvailableTickets() {
+        return tickets.availablePermits();
+    }
+
+    @Override
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    @Override
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    @Override
+    public long getStartedCount() {
+        return startedCount.sum();
+    }
+
+    @Override
+    public long getCompletedCount() {
+        return completedCount.sum();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    @Override
+    public long getTimedOutCount() {
+        return timedOutCount.sum();
+    }
+}
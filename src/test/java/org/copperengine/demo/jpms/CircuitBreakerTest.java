@@ -0,0 +1,109 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+import org.junit.jupiter.api.Test;
+
+import static org.copperengine.demo.jpms.CircuitBreaker.State.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+    @Test
+    void staysClosedBelowMinCalls() {
+        var breaker = new CircuitBreaker("test", 10, 4, 50, 60_000);
+        for(int i = 0; i < 3; i++) {
+            breaker.onResult(false);
+        }
+        assertEquals(CLOSED, breaker.getState());
+        assertEquals(100, breaker.getFailureRate());
+        breaker.onResult(false);
+        assertEquals(OPEN, breaker.getState());
+        assertEquals(1, breaker.getOpenCount());
+    }
+
+    @Test
+    void openBreakerRejectsRequests() {
+        var breaker = new CircuitBreaker("test", 4, 4, 50, 60_000);
+        breaker.onResult(true);
+        breaker.onResult(true);
+        breaker.onResult(false);
+        assertTrue(breaker.tryAcquire());
+        breaker.onResult(false);
+        assertEquals(OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(2, breaker.getRejectedCount());
+        // results of requests sent before the breaker opened are ignored
+        breaker.onResult(true);
+        assertEquals(OPEN, breaker.getState());
+    }
+
+    @Test
+    void oldOutcomesLeaveTheWindow() {
+        var breaker = new CircuitBreaker("test", 4, 4, 75, 60_000);
+        boolean[] outcomes = {false, false, true, true, true, false, false};
+        for(boolean success : outcomes) {
+            breaker.onResult(success);
+            assertEquals(CLOSED, breaker.getState());
+        }
+        // the window now holds the last four outcomes: true, true, false, false
+        assertEquals(50, breaker.getFailureRate());
+        breaker.onResult(false);
+        assertEquals(OPEN, breaker.getState());
+    }
+
+    @Test
+    void halfOpenBreakerLetsOneProbeThrough() throws InterruptedException {
+        var breaker = openBreaker(20);
+        Thread.sleep(50);
+        assertTrue(breaker.tryAcquire());
+        assertEquals(HALF_OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+        breaker.onResult(true);
+        assertEquals(CLOSED, breaker.getState());
+        assertEquals(0, breaker.getFailureRate());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void failedProbeOpensTheBreakerAgain() throws InterruptedException {
+        var breaker = openBreaker(20);
+        Thread.sleep(50);
+        assertTrue(breaker.tryAcquire());
+        breaker.onResult(false);
+        assertEquals(OPEN, breaker.getState());
+        assertEquals(2, breaker.getOpenCount());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    void releasedProbePermitCanBeTakenAgain() throws InterruptedException {
+        var breaker = openBreaker(20);
+        Thread.sleep(50);
+        assertTrue(breaker.tryAcquire());
+        breaker.release();
+        assertEquals(HALF_OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    private static CircuitBreaker openBreaker(long openMillis) {
+        var breaker = new CircuitBreaker("test", 2, 2, 50, openMillis);
+        breaker.onResult(false);
+        breaker.onResult(false);
+        assertEquals(OPEN, breaker.getState());
+        return breaker;
+    }
+}
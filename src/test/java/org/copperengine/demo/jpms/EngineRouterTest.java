@@ -0,0 +1,74 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EngineRouterTest {
+    @Test
+    void correlationIdCarriesTheShard() {
+        assertEquals("42@3", EngineRouter.correlationId(42, 3));
+        assertEquals(3, EngineRouter.shardOf("42@3"));
+        assertEquals(0, EngineRouter.shardOf(EngineRouter.createCorrelationId(0)));
+        assertEquals(17, EngineRouter.shardOf(EngineRouter.createCorrelationId(17)));
+        // only the last separator counts
+        assertEquals(5, EngineRouter.shardOf("a@b@5"));
+    }
+
+    @Test
+    void requestNumbersAreReservedInBlocks() {
+        long first = EngineRouter.nextRequestNumbers(10);
+        long next = EngineRouter.nextRequestNumbers(1);
+        assertTrue(next >= first + 10);
+    }
+
+    @Test
+    void rejectsMalformedCorrelationIds() {
+        assertThrows(IllegalArgumentException.class, () -> EngineRouter.shardOf("42"));
+        assertThrows(IllegalArgumentException.class, () -> EngineRouter.shardOf(""));
+        assertThrows(NumberFormatException.class, () -> EngineRouter.shardOf("42@"));
+        assertThrows(NumberFormatException.class, () -> EngineRouter.shardOf("42@x"));
+        assertThrows(NumberFormatException.class, () -> EngineRouter.shardOf("42@1 "));
+    }
+
+    @Test
+    void unknownShardIsNotRouted() {
+        var router = new EngineRouter();
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> router.engineFor("1@0"));
+        router.setEngine(1, null);
+        assertNull(router.engineFor("1@0"));
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> router.engineFor("1@2"));
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> router.engineFor("1@-1"));
+    }
+
+    @Test
+    void workflowIdsAreSpreadOverTheShards() {
+        int shardCount = 4;
+        int[] counts = new int[shardCount];
+        for(int i = 0; i < 4000; i++) {
+            int shard = EngineShards.shardOf("TEAM-" + i, shardCount);
+            assertTrue(shard >= 0 && shard < shardCount);
+            counts[shard]++;
+        }
+        for(int count : counts) {
+            assertTrue(count > 500, "unbalanced shards: " + Arrays.toString(counts));
+        }
+        assertEquals(EngineShards.shardOf("TEAM-1", shardCount), EngineShards.shardOf("TEAM-1", shardCount));
+    }
+}
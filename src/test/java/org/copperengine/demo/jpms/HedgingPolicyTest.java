@@ -0,0 +1,78 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HedgingPolicyTest {
+    @Test
+    void noDelayBeforeEnoughResponses() {
+        var policy = new HedgingPolicy(90, 0, 0, 10);
+        for(int i = 0; i < 99; i++) {
+            policy.recordResponse(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        assertEquals(-1, policy.getDelayNanos());
+        assertEquals(-1, policy.getHedgeDelayMillis());
+    }
+
+    @Test
+    void delayIsThePercentileOfTheWindow() {
+        var policy = new HedgingPolicy(90, 0, 0, 10);
+        for(int i = 1; i <= 100; i++) {
+            policy.recordResponse(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        long delayMillis = policy.getHedgeDelayMillis();
+        assertTrue(delayMillis >= 90 && delayMillis <= 92, "delay " + delayMillis);
+    }
+
+    @Test
+    void delayIsBoundedByTheMinimum() {
+        var policy = new HedgingPolicy(90, 5, 0, 10);
+        for(int i = 0; i < 100; i++) {
+            policy.recordResponse(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        assertEquals(5, policy.getHedgeDelayMillis());
+    }
+
+    @Test
+    void delayIsOnlyUpdatedAtTheEndOfTheWindow() {
+        var policy = new HedgingPolicy(90, 0, 60_000, 10);
+        for(int i = 0; i < 1000; i++) {
+            policy.recordResponse(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        assertEquals(-1, policy.getDelayNanos());
+    }
+
+    @Test
+    void hedgesAreBoundedByTheBudget() {
+        var policy = new HedgingPolicy(90, 0, 0, 10);
+        assertFalse(policy.tryHedge());
+        for(int i = 0; i < 10; i++) {
+            policy.onRequestSent();
+        }
+        assertTrue(policy.tryHedge());
+        assertFalse(policy.tryHedge());
+        for(int i = 0; i < 10; i++) {
+            policy.onRequestSent();
+        }
+        assertTrue(policy.tryHedge());
+        assertEquals(2, policy.getHedgeCount());
+        assertEquals(2, policy.getBudgetExhaustedCount());
+    }
+}
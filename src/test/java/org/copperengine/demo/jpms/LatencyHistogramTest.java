@@ -0,0 +1,95 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+    @Test
+    void smallValuesHaveTheirOwnBucket() {
+        for(long value = 0; value < 128; value++) {
+            assertEquals(value, LatencyHistogram.indexOf(value));
+            assertEquals(value, LatencyHistogram.highestEquivalentValue((int) value));
+        }
+    }
+
+    @Test
+    void bucketBoundariesAtPowersOfTwo() {
+        // from 128 on, each power of two is split into 64 sub-buckets of equal width
+        assertEquals(128, LatencyHistogram.indexOf(128));
+        assertEquals(128, LatencyHistogram.indexOf(129));
+        assertEquals(129, LatencyHistogram.indexOf(130));
+        assertEquals(191, LatencyHistogram.indexOf(255));
+        assertEquals(192, LatencyHistogram.indexOf(256));
+        assertEquals(192, LatencyHistogram.indexOf(259));
+        assertEquals(193, LatencyHistogram.indexOf(260));
+        assertEquals(129, LatencyHistogram.highestEquivalentValue(128));
+        assertEquals(255, LatencyHistogram.highestEquivalentValue(191));
+        assertEquals(259, LatencyHistogram.highestEquivalentValue(192));
+    }
+
+    @Test
+    void everyValueLiesInItsBucket() {
+        for(int bit = 7; bit < 63; bit++) {
+            long power = 1L << bit;
+            for(long value : new long[] {power - 1, power, power + 1, power + power / 2, 2 * power - 1}) {
+                int index = LatencyHistogram.indexOf(value);
+                long highest = LatencyHistogram.highestEquivalentValue(index);
+                assertTrue(highest >= value, "value " + value + " above its bucket " + highest);
+                assertTrue(LatencyHistogram.highestEquivalentValue(index - 1) < value, "value " + value + " in a lower bucket");
+                assertTrue(highest - value < value / 64 + 1, "relative error too large for " + value);
+            }
+        }
+    }
+
+    @Test
+    void largestValueFitsIntoTheCounts() {
+        int index = LatencyHistogram.indexOf(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.highestEquivalentValue(index));
+        var histogram = new LatencyHistogram();
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    void negativeValuesAreRecordedAsZero() {
+        var histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+    }
+
+    @Test
+    void percentilesAreBoundedByTheMaximum() {
+        var histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        for(long value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500.5, histogram.getMean(), 1e-9);
+        assertEquals(1, histogram.getValueAtPercentile(0));
+        long median = histogram.getValueAtPercentile(50);
+        assertTrue(median >= 500 && median <= 500 + 500 / 64, "median " + median);
+        assertEquals(1000, histogram.getValueAtPercentile(100));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(100));
+    }
+}
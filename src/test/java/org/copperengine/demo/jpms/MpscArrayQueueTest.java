@@ -0,0 +1,145 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MpscArrayQueueTest {
+    @Test
+    void capacityIsRoundedUpToPowerOfTwo() {
+        assertEquals(2, new MpscArrayQueue<>(2).capacity());
+        assertEquals(8, new MpscArrayQueue<>(5).capacity());
+        assertEquals(8, new MpscArrayQueue<>(8).capacity());
+        assertEquals(16, new MpscArrayQueue<>(9).capacity());
+        assertThrows(IllegalArgumentException.class, () -> new MpscArrayQueue<>(1));
+    }
+
+    @Test
+    void offerFailsWhenFull() {
+        var queue = new MpscArrayQueue<Integer>(4);
+        for(int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(i));
+        }
+        assertFalse(queue.offer(4));
+        assertEquals(4, queue.size());
+        assertEquals(0, queue.poll());
+        assertTrue(queue.offer(4));
+        assertFalse(queue.offer(5));
+    }
+
+    @Test
+    void nullIsRejected() {
+        assertThrows(NullPointerException.class, () -> new MpscArrayQueue<>(4).offer(null));
+    }
+
+    @Test
+    void pollOnEmptyQueueReturnsNull() {
+        var queue = new MpscArrayQueue<String>(4);
+        assertNull(queue.poll());
+        queue.offer("a");
+        assertEquals("a", queue.poll());
+        assertNull(queue.poll());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    void keepsFifoOrderAcrossWrapAround() {
+        var queue = new MpscArrayQueue<Integer>(4);
+        int next = 0;
+        int expected = 0;
+        for(int round = 0; round < 100; round++) {
+            // leave a different number of elements behind in each round, so that the indices wrap at every offset
+            while(queue.offer(next)) {
+                next++;
+            }
+            for(int i = round % 4; i >= 0; i--) {
+                assertEquals(expected++, queue.poll());
+            }
+        }
+        Integer e;
+        while((e = queue.poll()) != null) {
+            assertEquals(expected++, e);
+        }
+        assertEquals(next, expected);
+    }
+
+    @Test
+    void drainStopsAtLimit() {
+        var queue = new MpscArrayQueue<Integer>(8);
+        for(int i = 0; i < 5; i++) {
+            queue.offer(i);
+        }
+        var drained = new ArrayList<Integer>();
+        assertEquals(3, queue.drain(drained::add, 3));
+        assertEquals(List.of(0, 1, 2), drained);
+        assertEquals(2, queue.drain(drained::add, 10));
+        assertEquals(0, queue.drain(drained::add, 10));
+    }
+
+    @Test
+    void concurrentProducersLoseNoElement() throws InterruptedException {
+        int producerCount = 4;
+        int perProducer = 20_000;
+        var queue = new MpscArrayQueue<Integer>(64);
+        var start = new CountDownLatch(1);
+        var producers = new ArrayList<Thread>();
+        for(int p = 0; p < producerCount; p++) {
+            int first = p * perProducer;
+            var producer = new Thread(() -> {
+                try {
+                    start.await();
+                } catch(InterruptedException e) {
+                    return;
+                }
+                for(int i = first; i < first + perProducer; i++) {
+                    while(!queue.offer(i)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            producer.start();
+            producers.add(producer);
+        }
+        start.countDown();
+        Set<Integer> received = new HashSet<>();
+        int[] lastByProducer = new int[producerCount];
+        Arrays.fill(lastByProducer, -1);
+        while(received.size() < producerCount * perProducer) {
+            Integer e = queue.poll();
+            if(e == null) {
+                Thread.yield();
+                continue;
+            }
+            assertTrue(received.add(e), "duplicate element " + e);
+            // the elements of each producer arrive in the order in which they were offered
+            int producer = e / perProducer;
+            assertTrue(e > lastByProducer[producer]);
+            lastByProducer[producer] = e;
+        }
+        for(var producer : producers) {
+            producer.join();
+        }
+        assertNull(queue.poll());
+    }
+}
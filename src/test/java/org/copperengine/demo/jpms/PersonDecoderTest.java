@@ -0,0 +1,68 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersonDecoderTest {
+    private static final String ANNA = "{\"name\":\"Anna\",\"surname\":\"Berg\",\"gender\":\"female\",\"region\":\"Germany\"}";
+    private static final String OLE = "{\"name\":\"Ole\",\"surname\":\"Lund\",\"gender\":\"male\",\"region\":\"Norway\"}";
+
+    @Test
+    void decodesSingleObject() throws IOException {
+        assertEquals(new Person("Anna", "Berg", "Germany", true), PersonDecoder.decode(stream(ANNA)));
+    }
+
+    @Test
+    void decodesArray() throws IOException {
+        List<Person> persons = PersonDecoder.decodeList(stream("[" + ANNA + "," + OLE + "]"));
+        assertEquals(List.of(new Person("Anna", "Berg", "Germany", true), new Person("Ole", "Lund", "Norway", false)), persons);
+        assertEquals(List.of(), PersonDecoder.decodeList(stream("[]")));
+    }
+
+    @Test
+    void bulkResponseMayBeSingleObject() throws IOException {
+        assertEquals(List.of(new Person("Ole", "Lund", "Norway", false)), PersonDecoder.decodeList(stream(OLE)));
+    }
+
+    @Test
+    void skipsUnknownFields() throws IOException {
+        String json = "{\"photo\":{\"url\":\"x\",\"sizes\":[1,2]},\"age\":30,\"name\":\"Ole\",\"tags\":[],"
+                + "\"surname\":\"Lund\",\"region\":\"Norway\"}";
+        var person = PersonDecoder.decode(stream(json));
+        assertEquals(new Person("Ole", "Lund", "Norway", false), person);
+    }
+
+    @Test
+    void rejectsMalformedInput() {
+        assertThrows(IOException.class, () -> PersonDecoder.decode(stream("[" + ANNA + "]")));
+        assertThrows(IOException.class, () -> PersonDecoder.decodeList(stream("\"Anna\"")));
+        assertThrows(IOException.class, () -> PersonDecoder.decodeList(stream("[" + ANNA + ",1]")));
+        assertThrows(IOException.class, () -> PersonDecoder.decode(stream("{\"name\":\"Anna\",\"region\":\"Germany\"}")));
+        assertThrows(IOException.class, () -> PersonDecoder.decode(stream("{\"name\":\"Anna\"")));
+    }
+
+    private static InputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersonPoolTest {
+    private static final PersonKey KEY = PersonKey.ofRegion("Germany");
+
+    private final FakeClient client = new FakeClient();
+
+    private static class FakeClient extends RecruitingClient {
+        private final Queue<CompletableFuture<List<Person>>> fetches = new ConcurrentLinkedQueue<>();
+
+        private FakeClient() {
+            super("http://localhost:1/recruit", null);
+        }
+
+        @Override
+        public CompletableFuture<List<Person>> fetch(PersonKey key, int amount, long deadlineNanos) {
+            var response = new CompletableFuture<List<Person>>();
+            fetches.add(response);
+            return response;
+        }
+    }
+
+    @AfterEach
+    void shutdown() {
+        client.shutdown();
+    }
+
+    @Test
+    void refillPoolsEachNameOncePerKey() {
+        var pool = new PersonPool(client, 5, 10, 64, 60_000);
+        assertNull(pool.take(KEY));
+        client.fetches.remove().complete(List.of(person(1), person(2), person(1), person(2), person(3)));
+        assertEquals(3, pool.getPooledPersonCount());
+    }
+
+    @Test
+    void handedOutNamesCanBePooledAgain() {
+        // the recruiting service knows only a few names, so they recur in every response
+        var pool = new PersonPool(client, 2, 4, 64, 60_000);
+        pool.take(KEY);
+        client.fetches.remove().complete(persons(3));
+        for(int i = 0; i < 3; i++) {
+            assertNotNull(pool.take(KEY));
+        }
+        client.fetches.remove().complete(persons(3));
+        assertEquals(3, pool.getPooledPersonCount());
+        assertNotNull(pool.take(KEY));
+    }
+
+    @Test
+    void onlyOneRefillPerKeyIsInFlight() {
+        var pool = new PersonPool(client, 5, 10, 64, 60_000);
+        for(int i = 0; i < 10; i++) {
+            assertNull(pool.take(KEY));
+        }
+        assertEquals(1, client.fetches.size());
+        pool.take(PersonKey.ofGender(true));
+        assertEquals(2, client.fetches.size());
+    }
+
+    @Test
+    void emptyRefillIsNotRepeatedImmediately() {
+        var pool = new PersonPool(client, 5, 10, 64, 60_000);
+        pool.take(KEY);
+        client.fetches.remove().complete(List.of());
+        for(int i = 0; i < 10; i++) {
+            assertNull(pool.take(KEY));
+        }
+        assertTrue(client.fetches.isEmpty());
+        assertEquals(1, pool.getRefillCount());
+    }
+
+    @Test
+    void failedRefillIsNotRepeatedImmediately() {
+        var pool = new PersonPool(client, 5, 10, 64, 60_000);
+        pool.take(KEY);
+        client.fetches.remove().completeExceptionally(new IllegalStateException("expected by the test"));
+        pool.take(KEY);
+        assertTrue(client.fetches.isEmpty());
+        assertEquals(1, pool.getRefillFailureCount());
+    }
+
+    @Test
+    void leastRecentlyUsedKeyIsEvicted() {
+        var pool = new PersonPool(client, 2, 4, 1, 60_000);
+        pool.take(KEY);
+        client.fetches.remove().complete(persons(4));
+        assertEquals(4, pool.getPooledPersonCount());
+        pool.take(PersonKey.ofGender(true));
+        assertEquals(1, pool.getKeyCount());
+        assertEquals(4, pool.getEvictionCount());
+        // the persons of the evicted key are no longer pooled; the new key waits for its refill
+        assertEquals(0, pool.getPooledPersonCount());
+    }
+
+    private static List<Person> persons(int count) {
+        var persons = new ArrayList<Person>();
+        for(int i = 0; i < count; i++) {
+            persons.add(person(i));
+        }
+        return persons;
+    }
+
+    private static Person person(int i) {
+        return new Person("First" + i, "Last" + i, "Germany", false);
+    }
+}
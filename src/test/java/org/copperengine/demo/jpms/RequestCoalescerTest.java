@@ -0,0 +1,192 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestCoalescerTest {
+    private static final PersonKey KEY = PersonKey.ofRegion("Germany");
+
+    private final TimingWheel wheel = new TimingWheel("test-wheel", 5, TimeUnit.MILLISECONDS, 64);
+    private final FakeClient client = new FakeClient();
+
+    private static class Fetch {
+        private final PersonKey key;
+        private final int amount;
+        private final long deadlineNanos;
+        private final CompletableFuture<List<Person>> response = new CompletableFuture<>();
+
+        private Fetch(PersonKey key, int amount, long deadlineNanos) {
+            this.key = key;
+            this.amount = amount;
+            this.deadlineNanos = deadlineNanos;
+        }
+    }
+
+    private static class FakeClient extends RecruitingClient {
+        private final BlockingQueue<Fetch> fetches = new LinkedBlockingQueue<>();
+
+        private FakeClient() {
+            super("http://localhost:1/recruit", null);
+        }
+
+        @Override
+        public CompletableFuture<List<Person>> fetch(PersonKey key, int amount, long deadlineNanos) {
+            var fetch = new Fetch(key, amount, deadlineNanos);
+            fetches.add(fetch);
+            return fetch.response;
+        }
+
+        private Fetch next() throws InterruptedException {
+            var fetch = fetches.poll(5, TimeUnit.SECONDS);
+            assertNotNull(fetch, "no request sent");
+            return fetch;
+        }
+    }
+
+    @AfterEach
+    void shutdown() {
+        wheel.shutdown();
+        client.shutdown();
+    }
+
+    @Test
+    void fullBatchIsSentImmediately() throws Exception {
+        var coalescer = new RequestCoalescer(client, wheel, 60_000, 3);
+        var futures = request(coalescer, 3, RequestDeadlines.NO_DEADLINE);
+        var fetch = client.next();
+        assertEquals(KEY, fetch.key);
+        assertEquals(3, fetch.amount);
+        var persons = persons(3);
+        fetch.response.complete(persons);
+        for(int i = 0; i < 3; i++) {
+            assertEquals(persons.get(i), futures.get(i).get());
+        }
+        assertEquals(1, coalescer.getBatchCount());
+        assertEquals(3, coalescer.getRequestCount());
+    }
+
+    @Test
+    void partialBatchIsSentWhenTheWindowElapses() throws Exception {
+        var coalescer = new RequestCoalescer(client, wheel, 20, 10);
+        var futures = request(coalescer, 2, RequestDeadlines.NO_DEADLINE);
+        var fetch = client.next();
+        assertEquals(2, fetch.amount);
+        fetch.response.complete(persons(2));
+        assertTrue(futures.get(1).get().getFirstName().startsWith("First"));
+        // the next request opens a new batch
+        coalescer.request(KEY, RequestDeadlines.NO_DEADLINE);
+        assertEquals(1, client.next().amount);
+    }
+
+    @Test
+    void keysAreBatchedSeparately() throws Exception {
+        var coalescer = new RequestCoalescer(client, wheel, 60_000, 2);
+        coalescer.request(KEY, RequestDeadlines.NO_DEADLINE);
+        coalescer.request(PersonKey.ofGender(true), RequestDeadlines.NO_DEADLINE);
+        assertTrue(client.fetches.isEmpty());
+        coalescer.request(PersonKey.ofGender(true), RequestDeadlines.NO_DEADLINE);
+        assertEquals(PersonKey.ofGender(true), client.next().key);
+    }
+
+    @Test
+    void uncoveredRequestsFailOnPartialResponse() throws Exception {
+        var coalescer = new RequestCoalescer(client, wheel, 60_000, 3);
+        var futures = request(coalescer, 3, RequestDeadlines.NO_DEADLINE);
+        client.next().response.complete(persons(2));
+        assertNotNull(futures.get(0).get());
+        assertNotNull(futures.get(1).get());
+        var exc = assertThrows(ExecutionException.class, () -> futures.get(2).get());
+        assertTrue(exc.getCause().getMessage().startsWith("Partial response"));
+    }
+
+    @Test
+    void failureFailsTheWholeBatch() {
+        var coalescer = new RequestCoalescer(client, wheel, 60_000, 2);
+        var futures = request(coalescer, 2, RequestDeadlines.NO_DEADLINE);
+        var failure = new IllegalStateException("expected by the test");
+        assertDoesNotThrow(() -> client.next().response.completeExceptionally(failure));
+        for(var future : futures) {
+            var exc = assertThrows(ExecutionException.class, future::get);
+            assertSame(failure, exc.getCause());
+        }
+    }
+
+    @Test
+    void batchIsBoundedByTheEarliestDeadline() throws Exception {
+        var coalescer = new RequestCoalescer(client, wheel, 60_000, 4);
+        long now = System.nanoTime();
+        coalescer.request(KEY, RequestDeadlines.NO_DEADLINE);
+        coalescer.request(KEY, now + TimeUnit.SECONDS.toNanos(2));
+        coalescer.request(KEY, now + TimeUnit.SECONDS.toNanos(1));
+        coalescer.request(KEY, RequestDeadlines.NO_DEADLINE);
+        assertEquals(now + TimeUnit.SECONDS.toNanos(1), client.next().deadlineNanos);
+
+        request(coalescer, 4, RequestDeadlines.NO_DEADLINE);
+        assertEquals(RequestDeadlines.NO_DEADLINE, client.next().deadlineNanos);
+    }
+
+    @Test
+    void expiredBatchFailsOnlyTheExpiredRequests() throws Exception {
+        var coalescer = new RequestCoalescer(client, wheel, 60_000, 3);
+        long now = System.nanoTime();
+        var expired = coalescer.request(KEY, now - 1);
+        var live = coalescer.request(KEY, now + TimeUnit.MINUTES.toNanos(1));
+        var unbounded = coalescer.request(KEY, RequestDeadlines.NO_DEADLINE);
+        var first = client.next();
+        assertEquals(now - 1, first.deadlineNanos);
+        first.response.completeExceptionally(new RequestDeadlines.ExpiredException());
+
+        var exc = assertThrows(ExecutionException.class, expired::get);
+        assertInstanceOf(RequestDeadlines.ExpiredException.class, exc.getCause());
+        var resent = client.next();
+        assertEquals(2, resent.amount);
+        assertEquals(now + TimeUnit.MINUTES.toNanos(1), resent.deadlineNanos);
+        resent.response.complete(persons(2));
+        assertNotNull(live.get());
+        assertNotNull(unbounded.get());
+    }
+
+    @Test
+    void batchSizeIsBoundedByTheServiceLimit() throws Exception {
+        var coalescer = new RequestCoalescer(client, wheel, 60_000, 1000);
+        request(coalescer, 500, RequestDeadlines.NO_DEADLINE);
+        assertEquals(500, client.next().amount);
+    }
+
+    private static List<CompletableFuture<Person>> request(RequestCoalescer coalescer, int count, long deadlineNanos) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> coalescer.request(KEY, deadlineNanos))
+                .collect(Collectors.toList());
+    }
+
+    private static List<Person> persons(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> new Person("First" + i, "Last" + i, "Germany", i % 2 == 0))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestDeadlinesTest {
+    private final RequestDeadlines deadlines = new RequestDeadlines();
+
+    @Test
+    void expiryIsInclusive() {
+        long now = System.nanoTime();
+        assertTrue(RequestDeadlines.isExpired(now));
+        assertTrue(RequestDeadlines.isExpired(now - 1));
+        assertFalse(RequestDeadlines.isExpired(RequestDeadlines.deadlineAfter(60_000)));
+        assertFalse(RequestDeadlines.isExpired(RequestDeadlines.NO_DEADLINE));
+    }
+
+    @Test
+    void expirySurvivesNanoTimeOverflow() {
+        // nanoTime may be negative or wrap; only the difference to the deadline counts
+        assertFalse(RequestDeadlines.isExpired(System.nanoTime() + Long.MAX_VALUE / 2));
+        assertTrue(RequestDeadlines.isExpired(System.nanoTime() - Long.MAX_VALUE / 2));
+    }
+
+    @Test
+    void remainingTimeIsBounded() {
+        assertEquals(500, RequestDeadlines.remainingMillis(RequestDeadlines.NO_DEADLINE, 500));
+        assertEquals(500, RequestDeadlines.remainingMillis(RequestDeadlines.deadlineAfter(60_000), 500));
+        assertEquals(0, RequestDeadlines.remainingMillis(System.nanoTime() - TimeUnit.SECONDS.toNanos(1), 500));
+        long remaining = RequestDeadlines.remainingMillis(RequestDeadlines.deadlineAfter(200), 500);
+        assertTrue(remaining > 0 && remaining <= 200, "remaining " + remaining);
+    }
+
+    @Test
+    void responseIsDeliveredOnlyOnce() {
+        deadlines.register("1@0", RequestDeadlines.NO_DEADLINE);
+        assertEquals(1, deadlines.getLiveRequestCount());
+        assertTrue(deadlines.complete("1@0"));
+        assertFalse(deadlines.complete("1@0"));
+        assertEquals(1, deadlines.getLateResponseCount());
+        assertEquals(0, deadlines.getLiveRequestCount());
+    }
+
+    @Test
+    void expiredResponseIsDiscarded() {
+        deadlines.register("1@0", System.nanoTime() - 1);
+        assertFalse(deadlines.complete("1@0"));
+        assertEquals(1, deadlines.getLateResponseCount());
+    }
+
+    @Test
+    void cancelCancelsTheAttachedRequest() {
+        var request = new CompletableFuture<Void>();
+        deadlines.register("1@0", RequestDeadlines.NO_DEADLINE);
+        deadlines.attach("1@0", request);
+        assertTrue(deadlines.cancel("1@0"));
+        assertTrue(request.isCancelled());
+        assertFalse(deadlines.cancel("1@0"));
+        assertEquals(1, deadlines.getCancelledCount());
+        // the response of a cancelled request is late
+        assertFalse(deadlines.complete("1@0"));
+    }
+
+    @Test
+    void requestAttachedAfterCancelIsCancelled() {
+        deadlines.register("1@0", RequestDeadlines.NO_DEADLINE);
+        deadlines.cancel("1@0");
+        var request = new CompletableFuture<Void>();
+        deadlines.attach("1@0", request);
+        assertTrue(request.isCancelled());
+    }
+
+    @Test
+    void abandonedRequestIsNotCounted() {
+        deadlines.register("1@0", RequestDeadlines.NO_DEADLINE);
+        deadlines.abandon("1@0");
+        assertEquals(0, deadlines.getLiveRequestCount());
+        assertEquals(0, deadlines.getCancelledCount());
+        assertFalse(deadlines.cancel("1@0"));
+    }
+}
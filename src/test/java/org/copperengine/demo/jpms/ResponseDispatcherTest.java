@@ -0,0 +1,73 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+import org.copperengine.core.ProcessingEngine;
+import org.copperengine.core.Response;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseDispatcherTest {
+    private final AtomicInteger notifyCount = new AtomicInteger();
+    private final Set<String> notifyingThreads = ConcurrentHashMap.newKeySet();
+
+    private final ProcessingEngine engine = (ProcessingEngine) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[] {ProcessingEngine.class}, (proxy, method, args) -> {
+                if(method.getName().equals("notify") && args != null && args.length == 2) {
+                    notifyingThreads.add(Thread.currentThread().getName());
+                    notifyCount.incrementAndGet();
+                    return null;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            });
+
+    @Test
+    void fullQueueHoldsBackTheCaller() throws InterruptedException {
+        var dispatcher = new ResponseDispatcher(4, 2);
+        for(int i = 0; i < 10_000; i++) {
+            dispatcher.dispatch(engine, new Response<>(i + "@0", null, null));
+        }
+        dispatcher.shutdown();
+        assertEquals(10_000, notifyCount.get());
+        // the caller never notifies the engine itself while the dispatcher runs
+        assertEquals(Set.of("team-creation-response-dispatcher"), notifyingThreads);
+    }
+
+    @Test
+    void shutdownDeliversTheQueuedResponses() throws InterruptedException {
+        var dispatcher = new ResponseDispatcher(1024, 16);
+        for(int i = 0; i < 1000; i++) {
+            dispatcher.dispatch(engine, new Response<>(i + "@0", null, null));
+        }
+        dispatcher.shutdown();
+        assertEquals(1000, notifyCount.get());
+        assertEquals(0, dispatcher.getQueueSize());
+    }
+
+    @Test
+    void responsesAfterShutdownAreDeliveredDirectly() throws InterruptedException {
+        var dispatcher = new ResponseDispatcher(4, 2);
+        dispatcher.shutdown();
+        dispatcher.dispatch(engine, new Response<>("1@0", null, null));
+        assertEquals(1, notifyCount.get());
+        assertEquals(0, dispatcher.getQueueSize());
+    }
+}
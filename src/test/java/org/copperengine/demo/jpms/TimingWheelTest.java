@@ -0,0 +1,119 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingWheelTest {
+    // 4 buckets of 10 ms: a delay of more than 40 ms wraps around the wheel
+    private final TimingWheel wheel = new TimingWheel("test-wheel", 10, TimeUnit.MILLISECONDS, 4);
+
+    @AfterEach
+    void shutdown() {
+        wheel.shutdown();
+    }
+
+    @Test
+    void neverFiresEarly() throws InterruptedException {
+        long start = System.nanoTime();
+        long[] firedAfter = new long[1];
+        var fired = new CountDownLatch(1);
+        wheel.schedule(() -> {
+            firedAfter[0] = System.nanoTime() - start;
+            fired.countDown();
+        }, 25, TimeUnit.MILLISECONDS);
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+        assertTrue(firedAfter[0] >= TimeUnit.MILLISECONDS.toNanos(25), "fired after " + firedAfter[0] + " ns");
+        assertEquals(0, wheel.getPendingCount());
+    }
+
+    @Test
+    void delaysLongerThanOneRevolutionWrapAround() throws InterruptedException {
+        long start = System.nanoTime();
+        List<Long> order = new CopyOnWriteArrayList<>();
+        var fired = new CountDownLatch(3);
+        // 130 ms and 250 ms go several times around the wheel of 40 ms
+        for(long delay : new long[] {250, 130, 10}) {
+            wheel.schedule(() -> {
+                assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(delay), "fired early: " + delay);
+                order.add(delay);
+                fired.countDown();
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+        assertEquals(3, wheel.getPendingCount());
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(10L, 130L, 250L), order);
+    }
+
+    @Test
+    void cancelledTimeoutDoesNotRun() throws InterruptedException {
+        var ran = new AtomicBoolean();
+        var timeout = wheel.schedule(() -> ran.set(true), 30, TimeUnit.MILLISECONDS);
+        assertTrue(timeout.cancel());
+        assertTrue(timeout.isCancelled());
+        assertFalse(timeout.cancel());
+        assertEquals(0, wheel.getPendingCount());
+        Thread.sleep(100);
+        assertFalse(ran.get());
+    }
+
+    @Test
+    void expiredTimeoutCannotBeCancelled() throws InterruptedException {
+        var fired = new CountDownLatch(1);
+        var timeout = wheel.schedule(fired::countDown, 0, TimeUnit.MILLISECONDS);
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+        assertFalse(timeout.cancel());
+        assertFalse(timeout.isCancelled());
+    }
+
+    @Test
+    void wakesUpAfterIdlePeriod() throws InterruptedException {
+        var first = new CountDownLatch(1);
+        wheel.schedule(first::countDown, 0, TimeUnit.MILLISECONDS);
+        assertTrue(first.await(5, TimeUnit.SECONDS));
+        // let the worker park while nothing is pending
+        Thread.sleep(100);
+        long start = System.nanoTime();
+        var second = new CountDownLatch(1);
+        wheel.schedule(second::countDown, 20, TimeUnit.MILLISECONDS);
+        assertTrue(second.await(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    @Test
+    void failingTaskDoesNotStopTheWheel() throws InterruptedException {
+        wheel.schedule(() -> {
+            throw new IllegalStateException("expected by the test");
+        }, 0, TimeUnit.MILLISECONDS);
+        var fired = new CountDownLatch(1);
+        wheel.schedule(fired::countDown, 10, TimeUnit.MILLISECONDS);
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void rejectsTimeoutsAfterShutdown() {
+        wheel.shutdown();
+        assertThrows(IllegalStateException.class, () -> wheel.schedule(() -> { }, 1, TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketSchedulerTest {
+    private final TimingWheel wheel = new TimingWheel("test-wheel", 5, TimeUnit.MILLISECONDS, 64);
+
+    @AfterEach
+    void shutdown() {
+        wheel.shutdown();
+    }
+
+    @Test
+    void idleTimeDoesNotOverflowTheBucket() throws InterruptedException {
+        var scheduler = new TokenBucketScheduler(50, 2, 100, wheel);
+        // an idle bucket holds at most burstSize tokens
+        Thread.sleep(300);
+        long start = System.nanoTime();
+        var startedAt = new AtomicLongArray(4);
+        var started = new CountDownLatch(4);
+        for(int i = 0; i < 4; i++) {
+            int action = i;
+            assertTrue(scheduler.schedule(() -> {
+                startedAt.set(action, System.nanoTime() - start);
+                started.countDown();
+            }));
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(startedAt.get(0) < startedAt.get(2) && startedAt.get(1) < startedAt.get(2));
+        assertTrue(startedAt.get(2) >= TimeUnit.MILLISECONDS.toNanos(50), "third action started after " + startedAt.get(2) + " ns");
+        assertTrue(startedAt.get(3) >= TimeUnit.MILLISECONDS.toNanos(100), "fourth action started after " + startedAt.get(3) + " ns");
+        assertEquals(0, scheduler.getPendingCount());
+    }
+
+    @Test
+    void rejectsActionsBeyondMaxPending() throws InterruptedException {
+        var scheduler = new TokenBucketScheduler(10_000, 1, 2, wheel);
+        var first = new CountDownLatch(1);
+        assertTrue(scheduler.schedule(first::countDown));
+        assertTrue(first.await(5, TimeUnit.SECONDS));
+        assertEquals(0, scheduler.getPendingCount());
+        // the bucket is empty now: the next actions wait for 10 and 20 seconds
+        assertTrue(scheduler.schedule(() -> { }));
+        assertTrue(scheduler.schedule(() -> { }));
+        assertFalse(scheduler.schedule(() -> { }));
+        assertEquals(2, scheduler.getPendingCount());
+    }
+
+    @Test
+    void newPacingAppliesToLaterActions() throws InterruptedException {
+        var scheduler = new TokenBucketScheduler(10_000, 1, 10, wheel);
+        scheduler.schedule(() -> { });
+        // reserved 10 seconds ahead at the old rate
+        scheduler.schedule(() -> { });
+        scheduler.setPacing(0, 1);
+        assertEquals(0, scheduler.getDelayMillis());
+        var started = new CountDownLatch(3);
+        for(int i = 0; i < 3; i++) {
+            scheduler.schedule(started::countDown);
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void rejectsInvalidPacing() {
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucketScheduler(10, 0, 10, wheel));
+        var scheduler = new TokenBucketScheduler(10, 1, 10, wheel);
+        assertThrows(IllegalArgumentException.class, () -> scheduler.setPacing(-1, 1));
+        assertThrows(IllegalArgumentException.class, () -> scheduler.setPacing(10, 0));
+        assertEquals(10, scheduler.getDelayMillis());
+        assertEquals(1, scheduler.getBurstSize());
+    }
+
+    @Test
+    void sharedWheelIsNotShutDown() throws InterruptedException {
+        new TokenBucketScheduler(10, 1, 10, wheel).shutdown();
+        var fired = new CountDownLatch(1);
+        wheel.schedule(fired::countDown, 0, TimeUnit.MILLISECONDS);
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import org.copperengine.core.CopperException;
+import org.copperengine.core.WorkflowInstanceDescr;
+import org.copperengine.core.tranzient.TransientScottyEngine;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VirtualThreadWorkflowLauncherTest {
+    private final List<String> startedIds = new CopyOnWriteArrayList<>();
+    private final EngineShards shards = new EngineShards(List.of(new TransientScottyEngine() {
+        @Override
+        public void run(WorkflowInstanceDescr<?> descr) throws CopperException {
+            if(!((TeamCreationRequest) descr.getData()).isFemaleLeader()) {
+                throw new CopperException("engine stopped");
+            }
+            startedIds.add(descr.getId());
+        }
+    }));
+    private final VirtualThreadWorkflowLauncher launcher = new VirtualThreadWorkflowLauncher(shards);
+
+    @AfterEach
+    void close() {
+        launcher.close();
+    }
+
+    @Test
+    void completionEventCompletesTheFuture() throws Exception {
+        var futures = launcher.submitAll(List.of(new TeamCreationRequest(true, 2), new TeamCreationRequest(false, 2)));
+
+        var e = assertThrows(ExecutionException.class, () -> futures.get(1).get(1, TimeUnit.SECONDS));
+        assertInstanceOf(CopperException.class, e.getCause());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while(startedIds.isEmpty() || launcher.getPendingCount() > 0) {
+            assertTrue(System.nanoTime() - deadline < 0, "workflow not started");
+            Thread.sleep(1);
+        }
+        launcher.workflowCompleted(startedIds.get(0), true);
+        assertTrue(futures.get(0).get(1, TimeUnit.SECONDS));
+    }
+}
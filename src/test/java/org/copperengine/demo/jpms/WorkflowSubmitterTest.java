@@ -0,0 +1,85 @@
+/*
+ * Copyright 2018 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.demo.jpms;
+
+import org.copperengine.core.WorkflowInstanceDescr;
+import org.copperengine.core.tranzient.TransientScottyEngine;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorkflowSubmitterTest {
+    private final List<String> startedIds = new CopyOnWriteArrayList<>();
+    private final EngineShards shards = new EngineShards(List.of(new TransientScottyEngine() {
+        @Override
+        public void run(WorkflowInstanceDescr<?> descr) {
+            startedIds.add(descr.getId());
+        }
+    }));
+    private WorkflowSubmitter submitter;
+
+    @AfterEach
+    void close() {
+        submitter.close();
+    }
+
+    @Test
+    void completionReleasesTheTicket() throws Exception {
+        submitter = new WorkflowSubmitter(shards, 1, 10, 60_000);
+        var first = submitter.submit(new TeamCreationRequest(true, 2));
+        var second = submitter.submit(new TeamCreationRequest(true, 2));
+        assertEquals(1, submitter.getPendingCount());
+
+        submitter.workflowCompleted(startedIds.get(0), true);
+        assertTrue(first.get(1, TimeUnit.SECONDS));
+        submitter.workflowCompleted(waitForStart(1), false);
+        assertFalse(second.get(1, TimeUnit.SECONDS));
+        assertEquals(1, submitter.getAvailableTickets());
+    }
+
+    @Test
+    void workflowWithoutCompletionEventGivesItsTicketBack() throws Exception {
+        submitter = new WorkflowSubmitter(shards, 1, 10, 200);
+        var silent = submitter.submit(new TeamCreationRequest(true, 2));
+        var queued = submitter.submit(new TeamCreationRequest(true, 2));
+
+        var e = assertThrows(ExecutionException.class, () -> silent.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, e.getCause());
+        // the released ticket starts the queued workflow
+        submitter.workflowCompleted(waitForStart(1), true);
+        assertTrue(queued.get(1, TimeUnit.SECONDS));
+        assertEquals(1, submitter.getTimedOutCount());
+        // a late completion event does not release the ticket a second time
+        submitter.workflowCompleted(startedIds.get(0), true);
+        assertEquals(1, submitter.getAvailableTickets());
+    }
+
+    private String waitForStart(int index) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while(startedIds.size() <= index) {
+            assertTrue(System.nanoTime() - deadline < 0, "workflow not started");
+            Thread.sleep(1);
+        }
+        return startedIds.get(index);
+    }
+}
@@ -17,39 +17,88 @@ package org.copperengine.demo.jpms.workflow;
 
 import org.copperengine.core.*;
 import org.copperengine.demo.jpms.Person;
+import org.copperengine.demo.jpms.Team;
 import org.copperengine.demo.jpms.TeamCreationAdapter;
+import org.copperengine.demo.jpms.TeamCreationListener;
 import org.copperengine.demo.jpms.TeamCreationRequest;
+import org.copperengine.demo.jpms.TeamResultSink;
+import org.copperengine.demo.jpms.TimedResponse;
+import org.copperengine.demo.jpms.WorkflowMetrics;
+import org.copperengine.demo.jpms.WorkflowMetrics.Phase;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 
 @WorkflowDescription(alias = "TeamCreationWorkFlow", majorVersion = 1, minorVersion = 0, patchLevelVersion = 0)
 public class TeamCreationWorkflow extends Workflow<TeamCreationRequest> {
     private static final Logger logger = LoggerFactory.getLogger(TeamCreationWorkflow.class);
+    private static final int TIMEOUT_SECONDS = 60;
+    // identifies the System.nanoTime origin of this JVM
+    private static final long CLOCK_ID = ThreadLocalRandom.current().nextLong();
 
     private transient TeamCreationAdapter adapter;
+    private transient TeamCreationListener listener;
+    private transient WorkflowMetrics metrics;
+    private transient TeamResultSink resultSink;
+    private transient String memberProcessorPoolId;
+
+    // phase timestamps that must survive the waits; the nanoTime values are only used in the JVM that took them,
+    // a persistent workflow resumed in another JVM falls back to the wall-clock values
+    private long startedAtNanos;
+    private long startedAtMillis;
+    private long startedOnClock;
+    private long phaseStartedAtNanos;
+    private long phaseStartedAtMillis;
+    private long phaseStartedOnClock;
 
     @AutoWire
     public void setAdapter(TeamCreationAdapter adapter) {
         this.adapter = adapter;
     }
 
+    @AutoWire
+    public void setListener(TeamCreationListener listener) {
+        this.listener = listener;
+    }
+
+    @AutoWire
+    public void setMetrics(WorkflowMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @AutoWire
+    public void setResultSink(TeamResultSink resultSink) {
+        this.resultSink = resultSink;
+    }
+
+    @AutoWire
+    public void setMemberProcessorPoolId(String memberProcessorPoolId) {
+        this.memberProcessorPoolId = memberProcessorPoolId;
+    }
+
     @Override
     public void main() throws Interrupt {
-        // trigger the creation of the team leader
-        var leaderCorrelationId = adapter.asyncCreateLeader(getData().isFemaleLeader());
+        // trigger the creation of the team leader; the adapter abandons the request when the wait times out
+        startedAtNanos = System.nanoTime();
+        startedAtMillis = System.currentTimeMillis();
+        startedOnClock = CLOCK_ID;
+        var leaderCorrelationId = adapter.asyncCreateLeader(getData().isFemaleLeader(), TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
 
         // wait asynchronously for the team leader to be created
-        wait(WaitMode.ALL, 60, TimeUnit.SECONDS, leaderCorrelationId);
+        wait(WaitMode.ALL, TIMEOUT_SECONDS, TimeUnit.SECONDS, leaderCorrelationId);
 
         // retrieve the team leader
+        long resumedAt = System.nanoTime();
         Response<Person> leaderResponse = getAndRemoveResponse(leaderCorrelationId);
+        metrics.recordResume(resumedAt, TimedResponse.notifiedAt(leaderResponse));
+        metrics.record(Phase.LEADER, nanosSince(startedAtNanos, startedAtMillis, startedOnClock));
         var leader = fromResponse(leaderResponse, "leader", leaderCorrelationId);
         if(leader == null) {
             logger.warn("Failed to create leader with correlationId: {}", leaderCorrelationId);
+            listener.workflowCompleted(getId(), false);
             return;
         }
 
@@ -57,33 +106,108 @@ public class TeamCreationWorkflow extends Workflow<TeamCreationRequest> {
         leaderCorrelationId = null;
         leaderResponse = null;
 
-        // trigger the creation of all team members
+        // the member phase continues in its own processor pool (if configured) after the next wait
+        setProcessorPoolId(memberProcessorPoolId);
+
+        // trigger the creation of all team members; their correlation IDs are derived from the number of the first request
         int teamSize = getData().getTeamSize();
-        var memberCorrelationIds = new String[teamSize];
-        for(int i=0; i < teamSize; i++) {
-            memberCorrelationIds[i] = adapter.asyncCreateTeamMember(leader);
+        int quorum = getData().getMemberQuorum();
+        long membersTimeoutMillis = TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS);
+        if(quorum < teamSize && getData().getQuorumTimeoutMillis() > 0) {
+            membersTimeoutMillis = Math.min(membersTimeoutMillis, getData().getQuorumTimeoutMillis());
         }
+        long fanOutStartedAt = System.nanoTime();
+        long firstMemberRequest = adapter.asyncCreateTeamMembers(leader, teamSize, membersTimeoutMillis);
+        metrics.record(Phase.MEMBER_FAN_OUT, System.nanoTime() - fanOutStartedAt);
+        phaseStartedAtNanos = System.nanoTime();
+        phaseStartedAtMillis = System.currentTimeMillis();
+        phaseStartedOnClock = CLOCK_ID;
 
-        // wait asynchronously for all team members to be created
-        wait(WaitMode.ALL, 60, TimeUnit.SECONDS, memberCorrelationIds);
+        var members = new Person[teamSize];
+        int memberCount = 0;
+        long lastNotifiedAt = 0;
+        if(quorum >= teamSize) {
+            // wait asynchronously for all team members to be created
+            wait(WaitMode.ALL, membersTimeoutMillis, TimeUnit.MILLISECONDS, memberCorrelationIds(firstMemberRequest, teamSize));
+            resumedAt = System.nanoTime();
 
-        // retrieve all team members
-        var members = new ArrayList<Person>();
-        for(int i=0; i < teamSize; i++) {
-            Response<Person> memberResponse = getAndRemoveResponse(memberCorrelationIds[i]);
-            var member = fromResponse(memberResponse, "member", memberCorrelationIds[i]);
-            if(member != null) {
-                members.add(member);
+            // retrieve all team members
+            for(int i=0; i < teamSize; i++) {
+                String memberCorrelationId = adapter.correlationId(firstMemberRequest + i);
+                Response<Person> memberResponse = getAndRemoveResponse(memberCorrelationId);
+                lastNotifiedAt = Math.max(lastNotifiedAt, TimedResponse.notifiedAt(memberResponse));
+                var member = fromResponse(memberResponse, "member", memberCorrelationId);
+                if(member != null) {
+                    members[memberCount++] = member;
+                }
+            }
+        } else {
+            // collect the members as they arrive, until the quorum is reached or the time is up
+            var pending = new BitSet(teamSize);
+            pending.set(0, teamSize);
+            while(memberCount < quorum && !pending.isEmpty()) {
+                long remainingMillis = membersTimeoutMillis
+                        - TimeUnit.NANOSECONDS.toMillis(nanosSince(phaseStartedAtNanos, phaseStartedAtMillis, phaseStartedOnClock));
+                if(remainingMillis <= 0) {
+                    break;
+                }
+                wait(WaitMode.FIRST, remainingMillis, TimeUnit.MILLISECONDS, memberCorrelationIds(firstMemberRequest, pending));
+                for(int i = pending.nextSetBit(0); i >= 0; i = pending.nextSetBit(i + 1)) {
+                    String memberCorrelationId = adapter.correlationId(firstMemberRequest + i);
+                    Response<Person> memberResponse = getAndRemoveResponse(memberCorrelationId);
+                    if(memberResponse == null) {
+                        continue;
+                    }
+                    pending.clear(i);
+                    lastNotifiedAt = Math.max(lastNotifiedAt, TimedResponse.notifiedAt(memberResponse));
+                    var member = fromResponse(memberResponse, "member", memberCorrelationId);
+                    if(member != null) {
+                        members[memberCount++] = member;
+                    }
+                }
+            }
+            resumedAt = System.nanoTime();
+
+            // the team goes ahead without the stragglers
+            for(int i = pending.nextSetBit(0); i >= 0; i = pending.nextSetBit(i + 1)) {
+                adapter.cancel(adapter.correlationId(firstMemberRequest + i));
             }
         }
+        metrics.record(Phase.MEMBERS, nanosSince(phaseStartedAtNanos, phaseStartedAtMillis, phaseStartedOnClock));
+        metrics.record(Phase.WORKFLOW, nanosSince(startedAtNanos, startedAtMillis, startedOnClock));
+        metrics.recordResume(resumedAt, lastNotifiedAt);
 
-        // display the created team
-        if(members.isEmpty()) {
+        // publish the created team; the sink writes it from its own thread
+        if(memberCount == 0) {
             logger.warn("Failed to create members for the team of: {} from {}", leader.getFullName(), leader.getLocation());
         } else {
-            logger.info("Team of {} from {}: {}", leader.getFullName(), leader.getLocation(),
-                    members.stream().map(Person::getFullName).collect(Collectors.joining(", ")));
+            resultSink.publish(getId(), new Team(leader, members, memberCount));
+        }
+        listener.workflowCompleted(getId(), memberCount > 0);
+    }
+
+    private static long nanosSince(long startedAtNanos, long startedAtMillis, long startedOnClock) {
+        if(startedOnClock == CLOCK_ID) {
+            return Math.max(0, System.nanoTime() - startedAtNanos);
+        }
+        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, System.currentTimeMillis() - startedAtMillis));
+    }
+
+    private String[] memberCorrelationIds(long firstMemberRequest, int teamSize) {
+        var correlationIds = new String[teamSize];
+        for(int i=0; i < teamSize; i++) {
+            correlationIds[i] = adapter.correlationId(firstMemberRequest + i);
+        }
+        return correlationIds;
+    }
+
+    private String[] memberCorrelationIds(long firstMemberRequest, BitSet pending) {
+        var correlationIds = new String[pending.cardinality()];
+        int n = 0;
+        for(int i = pending.nextSetBit(0); i >= 0; i = pending.nextSetBit(i + 1)) {
+            correlationIds[n++] = adapter.correlationId(firstMemberRequest + i);
         }
+        return correlationIds;
     }
 
     private Person fromResponse(Response<Person> response, String role, String correlationId) {